@@ -0,0 +1,191 @@
+/* AndersonAcceleration.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Anderson acceleration (type II) of a fixed point iteration x -> G(x). The next iterate is the combination
+ * of the last few images G(x) whose residuals G(x) - x combine to the smallest residual. The iterate passed to
+ * {@link #accelerate} should be the result of the previous call, or a translation of it. Otherwise the caller
+ * must {@link #restart} first.
+ */
+class AndersonAcceleration {
+
+    private final int depth;
+
+    /**
+     * Differences of successive images and of successive residuals, stored as ring buffers.
+     */
+    private final double[][] imageDifferences;
+    private final double[][] residualDifferences;
+
+    /**
+     * Number of differences currently stored, and the position of the next difference to be stored.
+     */
+    private int count;
+    private int next;
+
+    private final double[] previousImage;
+    private final double[] previousResidual;
+    private boolean hasPrevious;
+
+    // work space
+    private final double[] residual;
+    private final double[][] matrix;
+    private final double[] coefficients;
+
+    /**
+     * Create an accelerator that remembers the given number of previous iterates, for
+     * vectors of the given size.
+     */
+    AndersonAcceleration(int depth, int size) {
+        this.depth = depth;
+        this.imageDifferences = new double[depth][size];
+        this.residualDifferences = new double[depth][size];
+        this.previousImage = new double[size];
+        this.previousResidual = new double[size];
+        this.residual = new double[size];
+        this.matrix = new double[depth][depth + 1];
+        this.coefficients = new double[depth];
+    }
+
+    /**
+     * Forget all previous iterates.
+     */
+    void restart() {
+        count = 0;
+        next = 0;
+        hasPrevious = false;
+    }
+
+    /**
+     * Compute the next iterate from the current iterate x and its image g = G(x).
+     *
+     * @return false if there was not enough information to accelerate, in which case result is a copy of g
+     */
+    boolean accelerate(double[] x, double[] g, double[] result) {
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            residual[i] = g[i] - x[i];
+        }
+        if (hasPrevious) {
+            double[] df = residualDifferences[next];
+            double[] dg = imageDifferences[next];
+            for (int i = 0; i < n; i++) {
+                df[i] = residual[i] - previousResidual[i];
+                dg[i] = g[i] - previousImage[i];
+            }
+            next = (next + 1) % depth;
+            count = Math.min(count + 1, depth);
+        }
+        System.arraycopy(residual, 0, previousResidual, 0, n);
+        System.arraycopy(g, 0, previousImage, 0, n);
+        hasPrevious = true;
+
+        System.arraycopy(g, 0, result, 0, n);
+        if (count == 0 || !solve()) {
+            return false;
+        }
+        for (int j = 0; j < count; j++) {
+            double[] dg = imageDifferences[j];
+            double gamma = coefficients[j];
+            for (int i = 0; i < n; i++) {
+                result[i] -= gamma * dg[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Relative regularization of the normal equations of the small least squares problem.
+     */
+    private static final double REGULARIZATION = 1.0E-10;
+
+    /**
+     * Find the coefficients which minimize the residual minus the combination of residual differences, by
+     * solving the (slightly regularized) normal equations with Gaussian elimination.
+     *
+     * @return false when the system turned out to be singular
+     */
+    private boolean solve() {
+        double trace = 0.0;
+        for (int j = 0; j < count; j++) {
+            for (int k = j; k < count; k++) {
+                double total = 0.0;
+                double[] a = residualDifferences[j];
+                double[] b = residualDifferences[k];
+                for (int i = 0; i < a.length; i++) {
+                    total += a[i] * b[i];
+                }
+                matrix[j][k] = total;
+                matrix[k][j] = total;
+            }
+            trace += matrix[j][j];
+            double total = 0.0;
+            double[] a = residualDifferences[j];
+            for (int i = 0; i < a.length; i++) {
+                total += a[i] * residual[i];
+            }
+            matrix[j][count] = total;
+        }
+        for (int j = 0; j < count; j++) {
+            matrix[j][j] += REGULARIZATION * trace / count;
+        }
+
+        // elimination with partial pivoting
+        for (int j = 0; j < count; j++) {
+            int pivot = j;
+            for (int k = j + 1; k < count; k++) {
+                if (Math.abs(matrix[k][j]) > Math.abs(matrix[pivot][j])) {
+                    pivot = k;
+                }
+            }
+            if (!(Math.abs(matrix[pivot][j]) > 0.0)) {
+                return false;
+            }
+            double[] tmp = matrix[j];
+            matrix[j] = matrix[pivot];
+            matrix[pivot] = tmp;
+            for (int k = j + 1; k < count; k++) {
+                double factor = matrix[k][j] / matrix[j][j];
+                for (int l = j; l <= count; l++) {
+                    matrix[k][l] -= factor * matrix[j][l];
+                }
+            }
+        }
+        for (int j = count - 1; j >= 0; j--) {
+            double value = matrix[j][count];
+            for (int k = j + 1; k < count; k++) {
+                value -= matrix[j][k] * coefficients[k];
+            }
+            coefficients[j] = value / matrix[j][j];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,179 @@
+/* BackendCalibration.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decides which direction method to use for {@link GaussNewtonSolver.DirectionMethod#AUTOMATIC}. The dense
+ * Cholesky factorization is fastest for small problems and the sparse Cholesky factorization for larger ones.
+ * The size at which the sparse method takes over depends on the machine and is determined by a short calibration
+ * run on prisms of increasing size, performed once. Very large problems use CGLS when the sparse factorization
+ * would not fit comfortably into memory. {@link GaussNewtonSolver.DirectionMethod#DENSE_LU} is never selected,
+ * as it decomposes the matrix again for every solve.
+ */
+class BackendCalibration {
+
+    /**
+     * Number of vertices in the base of the prisms used for calibration.
+     */
+    private static final int[] PRISM_SIZES = {4, 8, 16, 32, 64};
+
+    /**
+     * Number of times every direction is computed before timing starts, so that the timed code has been
+     * compiled by the JIT.
+     */
+    private static final int WARM_UP = 10;
+
+    /**
+     * Number of times every direction is computed during calibration. The median time is retained.
+     */
+    private static final int REPETITIONS = 7;
+
+    /**
+     * Number of consecutive prism sizes for which the sparse method must be fastest before it is used
+     * from the first of these sizes on.
+     */
+    private static final int CONFIRMATIONS = 2;
+
+    /**
+     * Fraction of the maximum heap size that the factor of the sparse Cholesky factorization may occupy.
+     */
+    private static final double FACTOR_MEMORY_FRACTION = 0.25;
+
+    private static BackendCalibration instance;
+
+    /**
+     * The calibration for the current machine. Calibrates when called for the first time.
+     */
+    static synchronized BackendCalibration get() {
+        if (instance == null) {
+            instance = new BackendCalibration();
+        }
+        return instance;
+    }
+
+    /**
+     * Problems with fewer variables use {@link GaussNewtonSolver.DirectionMethod#DENSE_CHOLESKY}.
+     */
+    private final int denseLimit;
+
+    private BackendCalibration() {
+        int first = 0; // first size of the current run of sizes for which the sparse method is fastest
+        int wins = 0;
+        for (int size : PRISM_SIZES) {
+            PlanarGraph prism = prism(size);
+            double[] coordinates = prismCoordinates(size);
+            long dense = measure(prism, coordinates, GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY);
+            if (measure(prism, coordinates, GaussNewtonSolver.DirectionMethod.CHOLESKY) < dense) {
+                if (wins == 0) {
+                    first = size;
+                }
+                wins++;
+                if (wins == CONFIRMATIONS) {
+                    break; // larger sizes need not be measured
+                }
+            } else {
+                wins = 0;
+            }
+        }
+        this.denseLimit = wins > 0 ? 6 * first : 12 * PRISM_SIZES[PRISM_SIZES.length - 1];
+    }
+
+    /**
+     * Median time (in nanoseconds) to compute a single direction for the given graph and coordinates.
+     */
+    private static long measure(PlanarGraph graph, double[] coordinates, GaussNewtonSolver.DirectionMethod method) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph);
+        solver.setDirectionMethod(method);
+        for (int i = 0; i < WARM_UP; i++) {
+            solver.computeDirectionAt(coordinates);
+        }
+        long[] times = new long[REPETITIONS];
+        for (int i = 0; i < REPETITIONS; i++) {
+            long start = System.nanoTime();
+            solver.computeDirectionAt(coordinates);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[REPETITIONS / 2];
+    }
+
+    /**
+     * Prism with the given number of vertices in its base.
+     */
+    private static PlanarGraph prism(int n) {
+        int[][] neighbours = new int[2 * n][];
+        for (int i = 0; i < n; i++) {
+            neighbours[i] = new int[]{(i + 1) % n, (i + n - 1) % n, n + i};
+            neighbours[n + i] = new int[]{n + (i + n - 1) % n, n + (i + 1) % n, i};
+        }
+        return new PlanarGraph(neighbours);
+    }
+
+    /**
+     * Slightly perturbed coordinates of an equilateral prism with the given number of vertices in its base.
+     */
+    private static double[] prismCoordinates(int n) {
+        Random random = new Random(n);
+        double radius = 0.5 / Math.sin(Math.PI / n);
+        double[] result = new double[6 * n];
+        for (int i = 0; i < 2 * n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            result[3 * i] = radius * Math.cos(angle) + 0.1 * random.nextGaussian();
+            result[3 * i + 1] = radius * Math.sin(angle) + 0.1 * random.nextGaussian();
+            result[3 * i + 2] = (i < n ? 0.0 : 1.0) + 0.1 * random.nextGaussian();
+        }
+        return result;
+    }
+
+    /**
+     * Direction method to use for a problem with the given number of variables.
+     *
+     * @param factorSize Number of 3x3 blocks in the sparse Cholesky factor for this problem. Only needed
+     *                   when the number of variables is at least {@link #getDenseLimit()}.
+     */
+    GaussNewtonSolver.DirectionMethod select(int nrOfVariables, long factorSize) {
+        if (nrOfVariables < denseLimit) {
+            return GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY;
+        } else if (9 * 8 * factorSize > FACTOR_MEMORY_FRACTION * Runtime.getRuntime().maxMemory()) {
+            return GaussNewtonSolver.DirectionMethod.CGLS;
+        } else {
+            return GaussNewtonSolver.DirectionMethod.CHOLESKY;
+        }
+    }
+
+    int getDenseLimit() {
+        return denseLimit;
+    }
+}
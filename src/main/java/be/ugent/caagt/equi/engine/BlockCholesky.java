@@ -0,0 +1,550 @@
+/* BlockCholesky.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Arrays;
+
+/**
+ * Cholesky factorization L L^T of a sparse symmetric positive definite matrix that consists of 3x3 blocks. The
+ * matrix is given as a {@link BlockSymmetricMatrix}, with its block rows and columns already permuted
+ * into elimination order.<p>
+ * The factorization is computed block row by block row ('up-looking'). The symbolic part of the factorization
+ * (elimination tree, block pattern of L) only depends on the block structure of the matrix and is computed
+ * once by {@link #analyze}. Afterwards {@link #factorize} can be called for every matrix with that
+ * same structure. All numerical work is done on 3x3 blocks.
+ */
+class BlockCholesky implements NormalEquationSolver {
+
+    /**
+     * Number of block columns
+     */
+    private final int n;
+
+    /**
+     * Elimination tree: parent of every block column, or -1 for a root
+     */
+    private int[] parent;
+
+    /**
+     * Block columns of L. The diagonal block is the first block of every column and is lower triangular,
+     * the other blocks are in increasing block row order. Entries are stored as in {@link BlockSymmetricMatrix}.
+     */
+    private int[] lColStart;
+    private int[] lRows;
+    private Factor lValues;
+
+    /**
+     * Whether the entries of L are stored in single precision, see {@link #setSinglePrecision}.
+     */
+    private boolean singlePrecision;
+
+    /**
+     * Numerical factorization and solve for a given storage of the entries of L. There is one implementation per
+     * precision, each with its own copy of the loops, so that the entries are read and written directly
+     * from and to a primitive array. All arithmetic is done in double precision.
+     */
+    private abstract static class Factor {
+
+        abstract boolean factorize(BlockCholesky cholesky, BlockSymmetricMatrix matrix);
+
+        abstract void solve(BlockCholesky cholesky, double[] rhs);
+    }
+
+    /**
+     * Block pattern of every block row of L (diagonal excluded), in compressed row format. Lists the
+     * block columns in the order in which they must be processed by the numerical factorization.
+     */
+    private int[] patternStart;
+    private int[] pattern;
+
+    // work arrays, fill keeps track of the current end of every block column of L
+    private final int[] mark;
+    private final int[] stack;
+    private final int[] path;
+    private final int[] fill;
+    private final double[] x;
+    private final double[] d;
+    private final double[] z;
+
+    BlockCholesky(int n) {
+        this.n = n;
+        this.mark = new int[n];
+        this.stack = new int[n];
+        this.path = new int[n];
+        this.fill = new int[n];
+        this.x = new double[9 * n];
+        this.d = new double[9];
+        this.z = new double[9];
+    }
+
+    /**
+     * Compute the elimination tree of the matrix.
+     */
+    private void computeTree(int[] colStart, int[] rows) {
+        parent = new int[n];
+        int[] ancestor = new int[n];
+        for (int k = 0; k < n; k++) {
+            parent[k] = -1;
+            ancestor[k] = -1;
+            for (int p = colStart[k]; p < colStart[k + 1]; p++) {
+                int i = rows[p];
+                while (i != -1 && i < k) {
+                    int inext = ancestor[i];
+                    ancestor[i] = k;
+                    if (inext == -1) {
+                        parent[i] = k;
+                    }
+                    i = inext;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the block pattern of block row k of L, excluding the diagonal. The pattern is stored in
+     * the top part of {@link #stack}, the index of the first element is returned.
+     */
+    private int reach(int k, int[] colStart, int[] rows) {
+        int top = n;
+        int stamp = k + 1;
+        mark[k] = stamp;
+        for (int p = colStart[k]; p < colStart[k + 1]; p++) {
+            int i = rows[p];
+            int len = 0;
+            while (mark[i] != stamp) {
+                path[len] = i;
+                len++;
+                mark[i] = stamp;
+                i = parent[i];
+            }
+            while (len > 0) {
+                top--;
+                len--;
+                stack[top] = path[len];
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Symbolic factorization: compute the elimination tree and the block patterns of the rows and
+     * columns of L for matrices with the block structure of the given matrix.
+     */
+    @Override
+    public void analyze(BlockSymmetricMatrix matrix) {
+        int[] colStart = matrix.colStart;
+        int[] rows = matrix.rows;
+        computeTree(colStart, rows);
+
+        // row patterns and column counts
+        Arrays.fill(mark, 0);
+        int[] counts = new int[n];
+        patternStart = new int[n + 1];
+        pattern = new int[colStart[n]];
+        for (int k = 0; k < n; k++) {
+            counts[k]++; // diagonal
+            int top = reach(k, colStart, rows);
+            int size = patternStart[k] + n - top;
+            if (size > pattern.length) {
+                pattern = Arrays.copyOf(pattern, Math.max(size, 2 * pattern.length));
+            }
+            for (int p = top; p < n; p++) {
+                counts[stack[p]]++;
+                pattern[patternStart[k] + p - top] = stack[p];
+            }
+            patternStart[k + 1] = size;
+        }
+        pattern = Arrays.copyOf(pattern, patternStart[n]);
+
+        // column structure
+        lColStart = new int[n + 1];
+        for (int k = 0; k < n; k++) {
+            lColStart[k + 1] = lColStart[k] + counts[k];
+        }
+        lRows = new int[lColStart[n]];
+        lValues = null; // allocated by the first factorization
+        for (int k = 0; k < n; k++) {
+            fill[k] = lColStart[k] + 1;
+            lRows[lColStart[k]] = k;
+        }
+        for (int k = 0; k < n; k++) {
+            for (int p = patternStart[k]; p < patternStart[k + 1]; p++) {
+                int i = pattern[p];
+                lRows[fill[i]] = k;
+                fill[i]++;
+            }
+        }
+    }
+
+    /**
+     * Numerical factorization of the given matrix, which must have the same block structure as the matrix
+     * passed to {@link #analyze}. Returns false if the matrix turned out not to be positive definite. Computations
+     * are done in double precision, also when the factor is stored in single precision.
+     */
+    @Override
+    public boolean factorize(BlockSymmetricMatrix matrix) {
+        if (lValues == null) {
+            int size = 9 * lColStart[n];
+            lValues = singlePrecision ? new FloatFactor(size) : new DoubleFactor(size);
+        }
+        for (int k = 0; k < n; k++) {
+            fill[k] = lColStart[k] + 1;
+        }
+        return lValues.factorize(this, matrix);
+    }
+
+    /**
+     * Scatter block column k of the matrix into {@link #x} (transposed) and {@link #d} (diagonal block).
+     */
+    private void scatter(int k, BlockSymmetricMatrix matrix) {
+        int[] rows = matrix.rows;
+        double[] values = matrix.values;
+        for (int p = matrix.colStart[k]; p < matrix.colStart[k + 1]; p++) {
+            int i = rows[p];
+            if (i == k) {
+                System.arraycopy(values, 9 * p, d, 0, 9);
+            } else {
+                for (int r = 0; r < 3; r++) {
+                    for (int c = 0; c < 3; c++) {
+                        x[9 * i + 3 * r + c] += values[9 * p + 3 * c + r];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Subtract z z^T from the lower triangle of {@link #d}.
+     */
+    private void updateDiagonal() {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c <= r; c++) {
+                d[3 * r + c] -= z[3 * r] * z[3 * c] + z[3 * r + 1] * z[3 * c + 1] + z[3 * r + 2] * z[3 * c + 2];
+            }
+        }
+    }
+
+    /**
+     * Cholesky factorization of the 3x3 block stored in the lower triangle of {@link #d}, overwriting it.
+     * Returns false if the block is not positive definite.
+     */
+    private boolean factorizeDiagonal() {
+        double d00 = d[0];
+        if (!(d00 > 0.0)) {
+            return false;
+        }
+        double l00 = Math.sqrt(d00);
+        double l10 = d[3] / l00;
+        double l20 = d[6] / l00;
+        double d11 = d[4] - l10 * l10;
+        if (!(d11 > 0.0)) {
+            return false;
+        }
+        double l11 = Math.sqrt(d11);
+        double l21 = (d[7] - l20 * l10) / l11;
+        double d22 = d[8] - l20 * l20 - l21 * l21;
+        if (!(d22 > 0.0)) {
+            return false;
+        }
+        d[0] = l00;
+        d[3] = l10;
+        d[4] = l11;
+        d[6] = l20;
+        d[7] = l21;
+        d[8] = Math.sqrt(d22);
+        return true;
+    }
+
+    private static final class DoubleFactor extends Factor {
+
+        private final double[] l;
+
+        DoubleFactor(int size) {
+            this.l = new double[size];
+        }
+
+        @Override
+        boolean factorize(BlockCholesky cholesky, BlockSymmetricMatrix matrix) {
+            int[] lColStart = cholesky.lColStart;
+            int[] lRows = cholesky.lRows;
+            int[] patternStart = cholesky.patternStart;
+            int[] pattern = cholesky.pattern;
+            int[] fill = cholesky.fill;
+            double[] x = cholesky.x;
+            double[] d = cholesky.d;
+            double[] z = cholesky.z;
+            for (int k = 0; k < cholesky.n; k++) {
+                cholesky.scatter(k, matrix);
+
+                // triangular solve for block row k of L
+                for (int q = patternStart[k]; q < patternStart[k + 1]; q++) {
+                    int i = pattern[q];
+
+                    // z = x_i L_ii^-T
+                    int lii = 9 * lColStart[i];
+                    for (int r = 0; r < 3; r++) {
+                        double z0 = x[9 * i + 3 * r] / l[lii];
+                        double z1 = (x[9 * i + 3 * r + 1] - l[lii + 3] * z0) / l[lii + 4];
+                        double z2 = (x[9 * i + 3 * r + 2] - l[lii + 6] * z0 - l[lii + 7] * z1) / l[lii + 8];
+                        z[3 * r] = z0;
+                        z[3 * r + 1] = z1;
+                        z[3 * r + 2] = z2;
+                    }
+                    Arrays.fill(x, 9 * i, 9 * i + 9, 0.0);
+
+                    // x_j -= z L_ji^T for all blocks already computed in column i
+                    int end = fill[i];
+                    for (int p = lColStart[i] + 1; p < end; p++) {
+                        int xj = 9 * lRows[p];
+                        int lji = 9 * p;
+                        for (int r = 0; r < 3; r++) {
+                            for (int c = 0; c < 3; c++) {
+                                x[xj + 3 * r + c] -= z[3 * r] * l[lji + 3 * c]
+                                        + z[3 * r + 1] * l[lji + 3 * c + 1]
+                                        + z[3 * r + 2] * l[lji + 3 * c + 2];
+                            }
+                        }
+                    }
+
+                    cholesky.updateDiagonal();
+                    System.arraycopy(z, 0, l, 9 * end, 9);
+                    fill[i] = end + 1;
+                }
+
+                if (!cholesky.factorizeDiagonal()) {
+                    return false;
+                }
+                int lkk = 9 * lColStart[k];
+                l[lkk] = d[0];
+                l[lkk + 3] = d[3];
+                l[lkk + 4] = d[4];
+                l[lkk + 6] = d[6];
+                l[lkk + 7] = d[7];
+                l[lkk + 8] = d[8];
+            }
+            return true;
+        }
+
+        @Override
+        void solve(BlockCholesky cholesky, double[] rhs) {
+            int[] lColStart = cholesky.lColStart;
+            int[] lRows = cholesky.lRows;
+            int n = cholesky.n;
+            // L y = rhs
+            for (int k = 0; k < n; k++) {
+                int lkk = 9 * lColStart[k];
+                double y0 = rhs[3 * k] / l[lkk];
+                double y1 = (rhs[3 * k + 1] - l[lkk + 3] * y0) / l[lkk + 4];
+                double y2 = (rhs[3 * k + 2] - l[lkk + 6] * y0 - l[lkk + 7] * y1) / l[lkk + 8];
+                rhs[3 * k] = y0;
+                rhs[3 * k + 1] = y1;
+                rhs[3 * k + 2] = y2;
+                for (int p = lColStart[k] + 1; p < lColStart[k + 1]; p++) {
+                    int j = 3 * lRows[p];
+                    int ljk = 9 * p;
+                    for (int r = 0; r < 3; r++) {
+                        rhs[j + r] -= l[ljk + 3 * r] * y0 + l[ljk + 3 * r + 1] * y1 + l[ljk + 3 * r + 2] * y2;
+                    }
+                }
+            }
+            // L^T result = y
+            for (int k = n - 1; k >= 0; k--) {
+                double v0 = rhs[3 * k];
+                double v1 = rhs[3 * k + 1];
+                double v2 = rhs[3 * k + 2];
+                for (int p = lColStart[k] + 1; p < lColStart[k + 1]; p++) {
+                    int j = 3 * lRows[p];
+                    int ljk = 9 * p;
+                    v0 -= l[ljk] * rhs[j] + l[ljk + 3] * rhs[j + 1] + l[ljk + 6] * rhs[j + 2];
+                    v1 -= l[ljk + 1] * rhs[j] + l[ljk + 4] * rhs[j + 1] + l[ljk + 7] * rhs[j + 2];
+                    v2 -= l[ljk + 2] * rhs[j] + l[ljk + 5] * rhs[j + 1] + l[ljk + 8] * rhs[j + 2];
+                }
+                int lkk = 9 * lColStart[k];
+                double x2 = v2 / l[lkk + 8];
+                double x1 = (v1 - l[lkk + 7] * x2) / l[lkk + 4];
+                double x0 = (v0 - l[lkk + 3] * x1 - l[lkk + 6] * x2) / l[lkk];
+                rhs[3 * k] = x0;
+                rhs[3 * k + 1] = x1;
+                rhs[3 * k + 2] = x2;
+            }
+        }
+    }
+
+    /**
+     * Same loops as {@link DoubleFactor}, with the entries of L rounded to float when stored.
+     */
+    private static final class FloatFactor extends Factor {
+
+        private final float[] l;
+
+        FloatFactor(int size) {
+            this.l = new float[size];
+        }
+
+        @Override
+        boolean factorize(BlockCholesky cholesky, BlockSymmetricMatrix matrix) {
+            int[] lColStart = cholesky.lColStart;
+            int[] lRows = cholesky.lRows;
+            int[] patternStart = cholesky.patternStart;
+            int[] pattern = cholesky.pattern;
+            int[] fill = cholesky.fill;
+            double[] x = cholesky.x;
+            double[] d = cholesky.d;
+            double[] z = cholesky.z;
+            for (int k = 0; k < cholesky.n; k++) {
+                cholesky.scatter(k, matrix);
+
+                // triangular solve for block row k of L
+                for (int q = patternStart[k]; q < patternStart[k + 1]; q++) {
+                    int i = pattern[q];
+
+                    // z = x_i L_ii^-T
+                    int lii = 9 * lColStart[i];
+                    for (int r = 0; r < 3; r++) {
+                        double z0 = x[9 * i + 3 * r] / l[lii];
+                        double z1 = (x[9 * i + 3 * r + 1] - l[lii + 3] * z0) / l[lii + 4];
+                        double z2 = (x[9 * i + 3 * r + 2] - l[lii + 6] * z0 - l[lii + 7] * z1) / l[lii + 8];
+                        z[3 * r] = z0;
+                        z[3 * r + 1] = z1;
+                        z[3 * r + 2] = z2;
+                    }
+                    Arrays.fill(x, 9 * i, 9 * i + 9, 0.0);
+
+                    // x_j -= z L_ji^T for all blocks already computed in column i
+                    int end = fill[i];
+                    for (int p = lColStart[i] + 1; p < end; p++) {
+                        int xj = 9 * lRows[p];
+                        int lji = 9 * p;
+                        for (int r = 0; r < 3; r++) {
+                            for (int c = 0; c < 3; c++) {
+                                x[xj + 3 * r + c] -= z[3 * r] * l[lji + 3 * c]
+                                        + z[3 * r + 1] * l[lji + 3 * c + 1]
+                                        + z[3 * r + 2] * l[lji + 3 * c + 2];
+                            }
+                        }
+                    }
+
+                    cholesky.updateDiagonal();
+                    for (int r = 0; r < 9; r++) {
+                        l[9 * end + r] = (float) z[r];
+                    }
+                    fill[i] = end + 1;
+                }
+
+                if (!cholesky.factorizeDiagonal()) {
+                    return false;
+                }
+                int lkk = 9 * lColStart[k];
+                l[lkk] = (float) d[0];
+                l[lkk + 3] = (float) d[3];
+                l[lkk + 4] = (float) d[4];
+                l[lkk + 6] = (float) d[6];
+                l[lkk + 7] = (float) d[7];
+                l[lkk + 8] = (float) d[8];
+            }
+            return true;
+        }
+
+        @Override
+        void solve(BlockCholesky cholesky, double[] rhs) {
+            int[] lColStart = cholesky.lColStart;
+            int[] lRows = cholesky.lRows;
+            int n = cholesky.n;
+            // L y = rhs
+            for (int k = 0; k < n; k++) {
+                int lkk = 9 * lColStart[k];
+                double y0 = rhs[3 * k] / l[lkk];
+                double y1 = (rhs[3 * k + 1] - l[lkk + 3] * y0) / l[lkk + 4];
+                double y2 = (rhs[3 * k + 2] - l[lkk + 6] * y0 - l[lkk + 7] * y1) / l[lkk + 8];
+                rhs[3 * k] = y0;
+                rhs[3 * k + 1] = y1;
+                rhs[3 * k + 2] = y2;
+                for (int p = lColStart[k] + 1; p < lColStart[k + 1]; p++) {
+                    int j = 3 * lRows[p];
+                    int ljk = 9 * p;
+                    for (int r = 0; r < 3; r++) {
+                        rhs[j + r] -= l[ljk + 3 * r] * y0 + l[ljk + 3 * r + 1] * y1 + l[ljk + 3 * r + 2] * y2;
+                    }
+                }
+            }
+            // L^T result = y
+            for (int k = n - 1; k >= 0; k--) {
+                double v0 = rhs[3 * k];
+                double v1 = rhs[3 * k + 1];
+                double v2 = rhs[3 * k + 2];
+                for (int p = lColStart[k] + 1; p < lColStart[k + 1]; p++) {
+                    int j = 3 * lRows[p];
+                    int ljk = 9 * p;
+                    v0 -= l[ljk] * rhs[j] + l[ljk + 3] * rhs[j + 1] + l[ljk + 6] * rhs[j + 2];
+                    v1 -= l[ljk + 1] * rhs[j] + l[ljk + 4] * rhs[j + 1] + l[ljk + 7] * rhs[j + 2];
+                    v2 -= l[ljk + 2] * rhs[j] + l[ljk + 5] * rhs[j + 1] + l[ljk + 8] * rhs[j + 2];
+                }
+                int lkk = 9 * lColStart[k];
+                double x2 = v2 / l[lkk + 8];
+                double x1 = (v1 - l[lkk + 7] * x2) / l[lkk + 4];
+                double x0 = (v0 - l[lkk + 3] * x1 - l[lkk + 6] * x2) / l[lkk];
+                rhs[3 * k] = x0;
+                rhs[3 * k + 1] = x1;
+                rhs[3 * k + 2] = x2;
+            }
+        }
+    }
+
+    /**
+     * Solve L L^T result = rhs using the current factorization. The contents of rhs is destroyed,
+     * rhs and result may be the same array. Always returns true.
+     */
+    @Override
+    public boolean solve(double[] rhs, double[] result) {
+        lValues.solve(this, rhs);
+        if (rhs != result) {
+            System.arraycopy(rhs, 0, result, 0, 3 * n);
+        }
+        return true;
+    }
+
+    /**
+     * Store the factor L in single precision, which halves its memory and the memory traffic of factorizations
+     * and solves, at the cost of precision. Invalidates the current factorization.
+     */
+    void setSinglePrecision(boolean singlePrecision) {
+        if (singlePrecision != this.singlePrecision) {
+            this.singlePrecision = singlePrecision;
+            lValues = null;
+        }
+    }
+
+    /**
+     * Number of 3x3 blocks of L, as determined by {@link #analyze}.
+     */
+    int getFactorSize() {
+        return lColStart[n];
+    }
+}
@@ -0,0 +1,129 @@
+/* BlockSymmetricMatrix.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Arrays;
+
+/**
+ * Upper triangle of a sparse symmetric matrix that consists of 3x3 blocks, in block compressed column
+ * format. Every block column contains its diagonal block, which is stored last and in full.
+ */
+class BlockSymmetricMatrix {
+
+    /**
+     * Position of the first block of every block column in the array {@link #rows}. Has
+     * one element more than there are block columns.
+     */
+    final int[] colStart;
+
+    /**
+     * Block row index of every stored block, in increasing order within a column.
+     */
+    final int[] rows;
+
+    /**
+     * Entries of every stored block, 9 per block, by rows. The entry (i,j) of block p is stored at
+     * index 9p + 3i + j.
+     */
+    final double[] values;
+
+    BlockSymmetricMatrix(int[] colStart, int[] rows) {
+        this.colStart = colStart;
+        this.rows = rows;
+        this.values = new double[9 * rows.length];
+    }
+
+    /**
+     * Number of block rows (and block columns) of this matrix.
+     */
+    int getOrder() {
+        return colStart.length - 1;
+    }
+
+    /**
+     * Index of the diagonal entry of the given row (and column) in {@link #values}. The row index
+     * is the index of a scalar row, not of a block row.
+     */
+    int diagonal(int row) {
+        int k = row / 3;
+        int i = row % 3;
+        return 9 * (colStart[k + 1] - 1) + 4 * i;
+    }
+
+    /**
+     * Compute the product of this matrix with the given vector and store it into result.
+     */
+    void multiply(double[] vector, double[] result) {
+        Arrays.fill(result, 0, 3 * getOrder(), 0.0);
+        for (int k = 0; k < getOrder(); k++) {
+            int c = 3 * k;
+            for (int p = colStart[k]; p < colStart[k + 1]; p++) {
+                int r = 3 * rows[p];
+                int base = 9 * p;
+                for (int i = 0; i < 3; i++) {
+                    result[r + i] += values[base + 3 * i] * vector[c]
+                            + values[base + 3 * i + 1] * vector[c + 1]
+                            + values[base + 3 * i + 2] * vector[c + 2];
+                }
+                if (r != c) {
+                    // lower triangle
+                    for (int j = 0; j < 3; j++) {
+                        result[c + j] += values[base + j] * vector[r]
+                                + values[base + 3 + j] * vector[r + 1]
+                                + values[base + 6 + j] * vector[r + 2];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Set all entries of the given row and column to zero, except for the diagonal entry, which is set to one.
+     * The row index is the index of a scalar row.
+     */
+    void clearRowAndColumn(int row) {
+        int k = row / 3;
+        int i = row % 3;
+        for (int p = colStart[k]; p < colStart[k + 1]; p++) {
+            for (int r = 0; r < 3; r++) {
+                values[9 * p + 3 * r + i] = 0.0;
+            }
+        }
+        for (int col = k; col < getOrder(); col++) {
+            int p = Arrays.binarySearch(rows, colStart[col], colStart[col + 1], k);
+            if (p >= 0) {
+                for (int j = 0; j < 3; j++) {
+                    values[9 * p + 3 * i + j] = 0.0;
+                }
+            }
+        }
+        values[diagonal(row)] = 1.0;
+    }
+}
@@ -0,0 +1,307 @@
+/* ConstraintKernels.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Evaluates the edge and quad equations, and their derivatives in a given direction, on a struct-of-arrays
+ * layout: separate x, y and z arrays for the points and separate index columns for the constraints.
+ * <p>
+ * Constraints are processed in blocks. Coordinate differences are first gathered into contiguous lane
+ * arrays, after which the equations are computed by straight-line loops over those arrays, which the
+ * JIT compiler turns into SIMD instructions where the hardware allows.
+ */
+class ConstraintKernels {
+
+    /**
+     * Number of constraints processed per block.
+     */
+    static final int BLOCK = 128;
+
+    /**
+     * Vertex numbers of the end points of every edge.
+     */
+    private final int[] edge0;
+    private final int[] edge1;
+
+    /**
+     * Vertex numbers of the four corners of every quad.
+     */
+    private final int[] quad0;
+    private final int[] quad1;
+    private final int[] quad2;
+    private final int[] quad3;
+
+    /**
+     * Coordinates of the points at which the equations are evaluated.
+     */
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+
+    /**
+     * Components of the direction in which derivatives are taken.
+     */
+    private final double[] u;
+    private final double[] v;
+    private final double[] w;
+
+    /**
+     * Create kernels for the given edges and quads, stored as in {@link GaussNewtonSolver}: two or
+     * four vertex numbers per constraint, multiplied by 3.
+     *
+     * @param order number of vertices
+     */
+    ConstraintKernels(int order, int[] edges, int[] quads) {
+        int nrOfEdges = edges.length / 2;
+        this.edge0 = new int[nrOfEdges];
+        this.edge1 = new int[nrOfEdges];
+        for (int i = 0; i < nrOfEdges; i++) {
+            edge0[i] = edges[2 * i] / 3;
+            edge1[i] = edges[2 * i + 1] / 3;
+        }
+        int nrOfQuads = quads.length / 4;
+        this.quad0 = new int[nrOfQuads];
+        this.quad1 = new int[nrOfQuads];
+        this.quad2 = new int[nrOfQuads];
+        this.quad3 = new int[nrOfQuads];
+        for (int i = 0; i < nrOfQuads; i++) {
+            quad0[i] = quads[4 * i] / 3;
+            quad1[i] = quads[4 * i + 1] / 3;
+            quad2[i] = quads[4 * i + 2] / 3;
+            quad3[i] = quads[4 * i + 3] / 3;
+        }
+        this.x = new double[order];
+        this.y = new double[order];
+        this.z = new double[order];
+        this.u = new double[order];
+        this.v = new double[order];
+        this.w = new double[order];
+    }
+
+    /**
+     * Work space for a single thread: the coordinate differences of a block of constraints. The three
+     * rows of a quad are the differences between its first three corners and the fourth.
+     */
+    static class Lanes {
+        final double[] ax = new double[BLOCK];
+        final double[] ay = new double[BLOCK];
+        final double[] az = new double[BLOCK];
+        final double[] bx = new double[BLOCK];
+        final double[] by = new double[BLOCK];
+        final double[] bz = new double[BLOCK];
+        final double[] cx = new double[BLOCK];
+        final double[] cy = new double[BLOCK];
+        final double[] cz = new double[BLOCK];
+
+        // same for the direction
+        final double[] dax = new double[BLOCK];
+        final double[] day = new double[BLOCK];
+        final double[] daz = new double[BLOCK];
+        final double[] dbx = new double[BLOCK];
+        final double[] dby = new double[BLOCK];
+        final double[] dbz = new double[BLOCK];
+        final double[] dcx = new double[BLOCK];
+        final double[] dcy = new double[BLOCK];
+        final double[] dcz = new double[BLOCK];
+    }
+
+    /**
+     * Store interleaved coordinates x0, y0, z0, x1, ... as the points at which the equations are evaluated.
+     */
+    void load(double[] coordinates) {
+        split(coordinates, x, y, z);
+    }
+
+    /**
+     * Store interleaved components as the direction in which derivatives are taken.
+     */
+    void loadDirection(double[] vector) {
+        split(vector, u, v, w);
+    }
+
+    private static void split(double[] interleaved, double[] xs, double[] ys, double[] zs) {
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = interleaved[3 * i];
+            ys[i] = interleaved[3 * i + 1];
+            zs[i] = interleaved[3 * i + 2];
+        }
+    }
+
+    /**
+     * Compute the values of the equations for the constraints with index from (inclusive) to (exclusive),
+     * where quads are numbered after the edges, and store the value for constraint i at position offset + i
+     * of result.
+     */
+    void values(int from, int to, double[] result, int offset, Lanes lanes) {
+        int nrOfEdges = edge0.length;
+        for (int start = from; start < Math.min(to, nrOfEdges); start += BLOCK) {
+            int end = Math.min(Math.min(to, nrOfEdges), start + BLOCK);
+            edgeValues(start, end, result, offset + start, lanes);
+        }
+        for (int start = Math.max(from, nrOfEdges); start < to; start += BLOCK) {
+            int end = Math.min(to, start + BLOCK);
+            quadValues(start - nrOfEdges, end - nrOfEdges, result, offset + start, lanes);
+        }
+    }
+
+    /**
+     * Compute the derivatives of the equations of all constraints in the loaded direction, i.e., the
+     * product of the Jacobean with that direction, and store them from the given offset in result.
+     */
+    void derivatives(double[] result, int offset, Lanes lanes) {
+        int nrOfEdges = edge0.length;
+        for (int start = 0; start < nrOfEdges; start += BLOCK) {
+            edgeDerivatives(start, Math.min(nrOfEdges, start + BLOCK), result, offset + start, lanes);
+        }
+        int nrOfQuads = quad0.length;
+        for (int start = 0; start < nrOfQuads; start += BLOCK) {
+            quadDerivatives(start, Math.min(nrOfQuads, start + BLOCK), result, offset + nrOfEdges + start, lanes);
+        }
+    }
+
+    private void gatherEdges(int from, int to, double[] xs, double[] ys, double[] zs,
+                             double[] rx, double[] ry, double[] rz) {
+        for (int i = from; i < to; i++) {
+            int p = edge0[i];
+            int q = edge1[i];
+            rx[i - from] = xs[p] - xs[q];
+            ry[i - from] = ys[p] - ys[q];
+            rz[i - from] = zs[p] - zs[q];
+        }
+    }
+
+    private void gatherQuads(int from, int to, double[] xs, double[] ys, double[] zs,
+                             double[] ax, double[] ay, double[] az,
+                             double[] bx, double[] by, double[] bz,
+                             double[] cx, double[] cy, double[] cz) {
+        for (int i = from; i < to; i++) {
+            int k = i - from;
+            int p = quad3[i];
+            double px = xs[p];
+            double py = ys[p];
+            double pz = zs[p];
+            int a = quad0[i];
+            ax[k] = xs[a] - px;
+            ay[k] = ys[a] - py;
+            az[k] = zs[a] - pz;
+            int b = quad1[i];
+            bx[k] = xs[b] - px;
+            by[k] = ys[b] - py;
+            bz[k] = zs[b] - pz;
+            int c = quad2[i];
+            cx[k] = xs[c] - px;
+            cy[k] = ys[c] - py;
+            cz[k] = zs[c] - pz;
+        }
+    }
+
+    private void edgeValues(int from, int to, double[] result, int offset, Lanes lanes) {
+        double[] ax = lanes.ax;
+        double[] ay = lanes.ay;
+        double[] az = lanes.az;
+        gatherEdges(from, to, x, y, z, ax, ay, az);
+        int count = to - from;
+        for (int k = 0; k < count; k++) {
+            result[offset + k] = -1.0 + ax[k] * ax[k] + ay[k] * ay[k] + az[k] * az[k];
+        }
+    }
+
+    private void quadValues(int from, int to, double[] result, int offset, Lanes lanes) {
+        double[] ax = lanes.ax;
+        double[] ay = lanes.ay;
+        double[] az = lanes.az;
+        double[] bx = lanes.bx;
+        double[] by = lanes.by;
+        double[] bz = lanes.bz;
+        double[] cx = lanes.cx;
+        double[] cy = lanes.cy;
+        double[] cz = lanes.cz;
+        gatherQuads(from, to, x, y, z, ax, ay, az, bx, by, bz, cx, cy, cz);
+        int count = to - from;
+        for (int k = 0; k < count; k++) {
+            result[offset + k] = ax[k] * by[k] * cz[k] + ay[k] * bz[k] * cx[k] + az[k] * bx[k] * cy[k]
+                    - ax[k] * bz[k] * cy[k] - ay[k] * bx[k] * cz[k] - az[k] * by[k] * cx[k];
+        }
+    }
+
+    private void edgeDerivatives(int from, int to, double[] result, int offset, Lanes lanes) {
+        double[] ax = lanes.ax;
+        double[] ay = lanes.ay;
+        double[] az = lanes.az;
+        double[] dax = lanes.dax;
+        double[] day = lanes.day;
+        double[] daz = lanes.daz;
+        gatherEdges(from, to, x, y, z, ax, ay, az);
+        gatherEdges(from, to, u, v, w, dax, day, daz);
+        int count = to - from;
+        for (int k = 0; k < count; k++) {
+            result[offset + k] = 2.0 * (ax[k] * dax[k] + ay[k] * day[k] + az[k] * daz[k]);
+        }
+    }
+
+    /**
+     * The derivative of det(a,b,c) is da.(b x c) + db.(c x a) + dc.(a x b).
+     */
+    private void quadDerivatives(int from, int to, double[] result, int offset, Lanes lanes) {
+        double[] ax = lanes.ax;
+        double[] ay = lanes.ay;
+        double[] az = lanes.az;
+        double[] bx = lanes.bx;
+        double[] by = lanes.by;
+        double[] bz = lanes.bz;
+        double[] cx = lanes.cx;
+        double[] cy = lanes.cy;
+        double[] cz = lanes.cz;
+        double[] dax = lanes.dax;
+        double[] day = lanes.day;
+        double[] daz = lanes.daz;
+        double[] dbx = lanes.dbx;
+        double[] dby = lanes.dby;
+        double[] dbz = lanes.dbz;
+        double[] dcx = lanes.dcx;
+        double[] dcy = lanes.dcy;
+        double[] dcz = lanes.dcz;
+        gatherQuads(from, to, x, y, z, ax, ay, az, bx, by, bz, cx, cy, cz);
+        gatherQuads(from, to, u, v, w, dax, day, daz, dbx, dby, dbz, dcx, dcy, dcz);
+        int count = to - from;
+        for (int k = 0; k < count; k++) {
+            result[offset + k] =
+                    dax[k] * (by[k] * cz[k] - bz[k] * cy[k])
+                            + day[k] * (bz[k] * cx[k] - bx[k] * cz[k])
+                            + daz[k] * (bx[k] * cy[k] - by[k] * cx[k])
+                            + dbx[k] * (cy[k] * az[k] - cz[k] * ay[k])
+                            + dby[k] * (cz[k] * ax[k] - cx[k] * az[k])
+                            + dbz[k] * (cx[k] * ay[k] - cy[k] * ax[k])
+                            + dcx[k] * (ay[k] * bz[k] - az[k] * by[k])
+                            + dcy[k] * (az[k] * bx[k] - ax[k] * bz[k])
+                            + dcz[k] * (ax[k] * by[k] - ay[k] * bx[k]);
+        }
+    }
+}
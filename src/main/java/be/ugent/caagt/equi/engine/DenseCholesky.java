@@ -0,0 +1,315 @@
+/* DenseCholesky.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Cholesky factorization L L^T of a symmetric positive definite matrix, stored as a dense matrix. Only
+ * intended for small and medium size matrices.<p>
+ * The factorization is computed by tiles of {@link #TILE} columns ('right-looking'). After a diagonal tile
+ * has been factorized, the rows below it are solved and the trailing part of the matrix is updated. When a
+ * fork join pool is given, these last two phases are divided over its threads, and so is copying the matrix
+ * into dense storage. The tasks that do so are created once and reused, so a factorization does not allocate.
+ */
+class DenseCholesky implements NormalEquationSolver {
+
+    private final int n;
+
+    /**
+     * Lower triangle of the matrix, and afterwards of L, stored by rows
+     */
+    private final double[] l;
+
+    /**
+     * Number of columns in a tile. A multiple of 3, so that tiles do not split vertices.
+     */
+    private static final int TILE = 48;
+
+    /**
+     * Number of rows below which a phase is not divided over the threads.
+     */
+    private static final int MIN_ROWS = 16;
+
+    /**
+     * Number of tasks per thread into which the rows are divided. Rows further down take longer to
+     * update, having more tasks than threads allows the pool to balance the load.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Pool used to factorize in parallel, or null when factorization is sequential.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Tasks that process contiguous ranges of rows, and the task that runs all of them. Null when
+     * there is no pool.
+     */
+    private final RowTask[] tasks;
+    private final RecursiveAction root;
+
+    /**
+     * Part of the factorization that is divided over the threads.
+     */
+    private enum Phase {
+        /**
+         * Copy the matrix into {@link #l}.
+         */
+        SCATTER,
+        /**
+         * Compute the entries of L in the columns of the current tile.
+         */
+        SOLVE,
+        /**
+         * Subtract the contributions of the columns of the current tile from the trailing part.
+         */
+        UPDATE
+    }
+
+    private Phase phase;
+
+    /**
+     * First row of the current phase. The phase processes all rows from here to the last.
+     */
+    private int firstRow;
+
+    /**
+     * Matrix being copied during {@link Phase#SCATTER}.
+     */
+    private BlockSymmetricMatrix matrix;
+
+    /**
+     * First and last column (exclusive) of the tile currently being processed.
+     */
+    private int tileStart;
+    private int tileEnd;
+
+    DenseCholesky(int n, ForkJoinPool pool) {
+        this.n = n;
+        this.l = new double[n * n];
+        this.pool = pool;
+        if (pool == null) {
+            this.tasks = null;
+            this.root = null;
+        } else {
+            this.tasks = new RowTask[CHUNKS_PER_THREAD * pool.getParallelism()];
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = new RowTask(i);
+            }
+            this.root = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            };
+        }
+    }
+
+    /**
+     * Processes the rows of the current phase that belong to the chunk with the given index. Chunk boundaries
+     * are multiples of 3, so that chunks do not split vertices.
+     */
+    private class RowTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+
+        RowTask(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            int vertices = (n - firstRow) / 3;
+            int from = firstRow + 3 * (int) ((long) index * vertices / tasks.length);
+            int to = firstRow + 3 * (int) ((long) (index + 1) * vertices / tasks.length);
+            processRows(from, to);
+        }
+    }
+
+    /**
+     * Perform the current phase for the given range of rows.
+     */
+    private void processRows(int from, int to) {
+        switch (phase) {
+            case SCATTER:
+                scatterRows(from, to);
+                break;
+            case SOLVE:
+                for (int i = from; i < to; i++) {
+                    solveRow(i);
+                }
+                break;
+            case UPDATE:
+                for (int i = from; i < to; i++) {
+                    updateRow(i);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Perform the given phase for all rows from the given row onwards, in parallel when possible.
+     */
+    private void run(Phase phase, int from) {
+        this.phase = phase;
+        this.firstRow = from;
+        if (pool == null || n - from <= MIN_ROWS) {
+            processRows(from, n);
+        } else {
+            for (RowTask task : tasks) {
+                task.reinitialize();
+            }
+            root.reinitialize();
+            pool.invoke(root);
+        }
+    }
+
+    /**
+     * Compute the entries of L in the given row and in the columns of the current tile.
+     */
+    private void solveRow(int i) {
+        int rowI = i * n;
+        for (int j = tileStart; j < tileEnd; j++) {
+            int rowJ = j * n;
+            double value = l[rowI + j];
+            for (int k = tileStart; k < j; k++) {
+                value -= l[rowI + k] * l[rowJ + k];
+            }
+            l[rowI + j] = value / l[rowJ + j];
+        }
+    }
+
+    /**
+     * Subtract the contributions of the columns of the current tile from the given row, right of the tile.
+     */
+    private void updateRow(int i) {
+        int rowI = i * n;
+        for (int j = tileEnd; j <= i; j++) {
+            int rowJ = j * n;
+            double value = 0.0;
+            for (int k = tileStart; k < tileEnd; k++) {
+                value += l[rowI + k] * l[rowJ + k];
+            }
+            l[rowI + j] -= value;
+        }
+    }
+
+    @Override
+    public void analyze(BlockSymmetricMatrix matrix) {
+        // nothing to do
+    }
+
+    /**
+     * Copy the lower triangle of {@link #matrix} into the given rows of {@link #l}, which must start and end
+     * at a multiple of 3. Row 3k + j of the lower triangle is column 3k + j of the upper triangle, which is
+     * stored in block column k.
+     */
+    private void scatterRows(int from, int to) {
+        int[] colStart = matrix.colStart;
+        for (int row = from; row < to; row++) {
+            Arrays.fill(l, row * n, row * n + row + 1, 0.0);
+        }
+        for (int k = from / 3; k < to / 3; k++) {
+            for (int p = colStart[k]; p < colStart[k + 1]; p++) {
+                int row = 3 * matrix.rows[p];
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        if (row + i <= 3 * k + j) {
+                            l[(3 * k + j) * n + row + i] = matrix.values[9 * p + 3 * i + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean factorize(BlockSymmetricMatrix matrix) {
+        this.matrix = matrix;
+        run(Phase.SCATTER, 0);
+        this.matrix = null;
+        for (tileStart = 0; tileStart < n; tileStart = tileEnd) {
+            tileEnd = Math.min(n, tileStart + TILE);
+
+            // diagonal tile
+            for (int i = tileStart; i < tileEnd; i++) {
+                int rowI = i * n;
+                for (int j = tileStart; j <= i; j++) {
+                    int rowJ = j * n;
+                    double value = l[rowI + j];
+                    for (int k = tileStart; k < j; k++) {
+                        value -= l[rowI + k] * l[rowJ + k];
+                    }
+                    if (j < i) {
+                        l[rowI + j] = value / l[rowJ + j];
+                    } else if (value > 0.0) {
+                        l[rowI + i] = Math.sqrt(value);
+                    } else {
+                        return false;
+                    }
+                }
+            }
+
+            // rows below the tile, then the trailing part of the matrix
+            run(Phase.SOLVE, tileEnd);
+            run(Phase.UPDATE, tileEnd);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean solve(double[] rhs, double[] result) {
+        // L y = rhs
+        for (int i = 0; i < n; i++) {
+            double value = rhs[i];
+            for (int k = 0; k < i; k++) {
+                value -= l[i * n + k] * rhs[k];
+            }
+            rhs[i] = value / l[i * n + i];
+        }
+        // L^T result = y
+        for (int i = n - 1; i >= 0; i--) {
+            double value = rhs[i];
+            for (int k = i + 1; k < n; k++) {
+                value -= l[k * n + i] * rhs[k];
+            }
+            rhs[i] = value / l[i * n + i];
+        }
+        if (rhs != result) {
+            System.arraycopy(rhs, 0, result, 0, n);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+/* DenseLU.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+/**
+ * Solves the normal equations with the dense LU decomposition of EJML. Does not depend on the
+ * matrix being positive definite, but is slower than {@link DenseCholesky}: the matrix is decomposed
+ * again for every solve, and EJML allocates its own work space every time. Never selected by
+ * {@link GaussNewtonSolver.DirectionMethod#AUTOMATIC}.
+ */
+class DenseLU implements NormalEquationSolver {
+
+    private final DenseMatrix64F matrix;
+    private final DenseMatrix64F rhs;
+    private final DenseMatrix64F solution;
+
+    DenseLU(int n) {
+        this.matrix = new DenseMatrix64F(n, n);
+        this.rhs = new DenseMatrix64F(n, 1);
+        this.solution = new DenseMatrix64F(n, 1);
+    }
+
+    @Override
+    public void analyze(BlockSymmetricMatrix matrix) {
+        // nothing to do
+    }
+
+    /**
+     * Stores the given matrix, the decomposition itself is computed by {@link #solve}.
+     */
+    @Override
+    public boolean factorize(BlockSymmetricMatrix blocks) {
+        int n = matrix.numCols;
+        double[] data = matrix.data;
+        int[] colStart = blocks.colStart;
+        for (int k = 0; k < blocks.getOrder(); k++) {
+            for (int p = colStart[k]; p < colStart[k + 1]; p++) {
+                int row = 3 * blocks.rows[p];
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        double value = blocks.values[9 * p + 3 * i + j];
+                        data[(row + i) * n + 3 * k + j] = value;
+                        data[(3 * k + j) * n + row + i] = value;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean solve(double[] rhs, double[] result) {
+        System.arraycopy(rhs, 0, this.rhs.data, 0, this.rhs.numRows);
+        if (!CommonOps.solve(matrix, this.rhs, solution)) {
+            return false;
+        }
+        for (double value : solution.data) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return false;
+            }
+        }
+        System.arraycopy(solution.data, 0, result, 0, solution.numRows);
+        return true;
+    }
+}
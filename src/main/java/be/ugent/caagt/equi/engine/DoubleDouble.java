@@ -0,0 +1,115 @@
+/* DoubleDouble.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Mutable double-double number: the unevaluated sum of two doubles hi + lo with |lo| at most half an ulp of
+ * hi. Has about 106 bits of precision. Used to evaluate the equations without rounding errors that exceed
+ * those of the coordinates themselves. Operations update the number in place, so that a computation only
+ * needs a few of these objects, however many operations it performs.
+ */
+final class DoubleDouble {
+
+    double hi;
+    double lo;
+
+    /**
+     * Set this number to hi + lo, which must already satisfy the restriction on their sizes.
+     */
+    void set(double hi, double lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /**
+     * Set this number to the difference of the double-doubles high[a] + low[a] and high[b] + low[b].
+     */
+    void setDifference(double[] high, double[] low, int a, int b) {
+        set(high[a], low[a]);
+        subtract(high[b], low[b]);
+    }
+
+    /**
+     * Set this number to the exact sum of a and b, when |a| >= |b|.
+     */
+    private void setFastSum(double a, double b) {
+        double s = a + b;
+        lo = b - (s - a);
+        hi = s;
+    }
+
+    /**
+     * Add the double-double otherHi + otherLo to this number.
+     */
+    void add(double otherHi, double otherLo) {
+        // exact sums s + sLo = hi + otherHi and t + tLo = lo + otherLo
+        double s = hi + otherHi;
+        double bb = s - hi;
+        double sLo = (hi - (s - bb)) + (otherHi - bb);
+        double t = lo + otherLo;
+        bb = t - lo;
+        double tLo = (lo - (t - bb)) + (otherLo - bb);
+        setFastSum(s, sLo + t);
+        setFastSum(hi, lo + tLo);
+    }
+
+    void add(DoubleDouble other) {
+        add(other.hi, other.lo);
+    }
+
+    void subtract(double otherHi, double otherLo) {
+        add(-otherHi, -otherLo);
+    }
+
+    void subtract(DoubleDouble other) {
+        add(-other.hi, -other.lo);
+    }
+
+    /**
+     * Multiply this number by the double-double otherHi + otherLo.
+     */
+    void multiply(double otherHi, double otherLo) {
+        double p = hi * otherHi;
+        double e = Math.fma(hi, otherHi, -p);
+        e += hi * otherLo + lo * otherHi;
+        setFastSum(p, e);
+    }
+
+    void multiply(DoubleDouble other) {
+        multiply(other.hi, other.lo);
+    }
+
+    /**
+     * Nearest double.
+     */
+    double doubleValue() {
+        return hi + lo;
+    }
+}
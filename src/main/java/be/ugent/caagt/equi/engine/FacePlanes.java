@@ -0,0 +1,446 @@
+/* FacePlanes.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Equations of {@link GaussNewtonSolver.Planarity#FACE_PLANES}: an incidence n.(v - w) = 0 for every vertex v
+ * but the first vertex w of a face, and |n|^2 - 1 = 0 for the normal n of every face. Evaluates these equations,
+ * their partials and the matrix free products with their part of the Jacobean.
+ * <p>
+ * Equations are numbered locally: incidences first, then normals. Methods that take weights or store
+ * results use the entries from a given offset onwards, so that the solver can place these equations after its
+ * edges and quads.
+ */
+class FacePlanes {
+
+    /**
+     * Triples (v, w, n) for every incidence, where w is the first vertex of the face, v is one of the other
+     * vertices, and n is the number of the first variable of the normal of the face. Vertex numbers are
+     * multiplied by 3. Triples of the same face are consecutive and follow the order of the vertices of the face.
+     */
+    final int[] incidences;
+
+    /**
+     * Number of the first variable of the normal of every face.
+     */
+    final int[] normals;
+
+    /**
+     * Work space for {@link #fitNormals}: the normal being fitted, and the scatter matrix of the vertices
+     * of the face.
+     */
+    private final double[] fit = new double[3];
+    private final double[] scatter = new double[6];
+
+    /**
+     * Create the equations for the given faces, whose normals become the variables from the given index onwards.
+     */
+    FacePlanes(List<int[]> faces, int firstVariable) {
+        this.normals = new int[faces.size()];
+        int count = 0;
+        for (int f = 0; f < normals.length; f++) {
+            normals[f] = firstVariable + 3 * f;
+            count += faces.get(f).length - 1;
+        }
+        this.incidences = new int[3 * count];
+        int pos = 0;
+        for (int f = 0; f < normals.length; f++) {
+            int[] face = faces.get(f);
+            for (int i = 1; i < face.length; i++) {
+                incidences[pos] = 3 * face[i];
+                incidences[pos + 1] = 3 * face[0];
+                incidences[pos + 2] = normals[f];
+                pos += 3;
+            }
+        }
+    }
+
+    int nrOfIncidences() {
+        return incidences.length / 3;
+    }
+
+    int nrOfNormals() {
+        return normals.length;
+    }
+
+    int nrOfEquations() {
+        return nrOfIncidences() + nrOfNormals();
+    }
+
+    /**
+     * Fit the normals to the current coordinates: start from Newell's normal, which is exact for a planar face,
+     * and improve it by a few steps of inverse iteration towards the least squares normal. The latter is
+     * needed for self-intersecting faces, whose signed area, and hence Newell's normal, may nearly vanish.
+     * Faces whose vertices are collinear get no normal.
+     * A face keeps its current normal (e.g., the result of the previous step) when that normal fits its
+     * vertices better.
+     */
+    void fitNormals(double[] variables) {
+        int p = 0;
+        for (int n : normals) {
+            Arrays.fill(fit, 0.0);
+            Arrays.fill(scatter, 0.0);
+            int start = p;
+            int first = incidences[p + 1];
+            int prev = first;
+            while (prev >= 0) {
+                int next;
+                if (p < incidences.length && incidences[p + 2] == n) {
+                    next = incidences[p];
+                    p += 3;
+                    addToScatter(variables, next, first);
+                } else {
+                    next = first; // close the face
+                }
+                fit[0] += (variables[prev + 1] - variables[next + 1]) * (variables[prev + 2] + variables[next + 2]);
+                fit[1] += (variables[prev + 2] - variables[next + 2]) * (variables[prev] + variables[next]);
+                fit[2] += (variables[prev] - variables[next]) * (variables[prev + 1] + variables[next + 1]);
+                prev = next == first ? -1 : next;
+            }
+            if (!normalize(fit)) {
+                // start from the axis along which the vertices are spread least
+                int axis = scatter[0] <= scatter[3] && scatter[0] <= scatter[5] ? 0 : scatter[3] <= scatter[5] ? 1 : 2;
+                fit[axis] = 1.0;
+            }
+            if (inverseIteration()) {
+                for (int i = 1; i < FIT_ITERATIONS; i++) {
+                    inverseIteration();
+                }
+                if (!(normalFit(variables, start, p, variables, n) <= normalFit(variables, start, p, fit, 0))) {
+                    System.arraycopy(fit, 0, variables, n, 3);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of steps of inverse iteration in {@link #fitNormals}. Every step reduces the deviation from the
+     * least squares normal by the ratio of the two smallest eigenvalues of the scatter matrix, which is small
+     * for a nearly planar face.
+     */
+    private static final int FIT_ITERATIONS = 3;
+
+    /**
+     * Add (v - w)(v - w)^T to {@link #scatter}, stored as xx, xy, xz, yy, yz, zz.
+     */
+    private void addToScatter(double[] variables, int v, int w) {
+        double dx = variables[v] - variables[w];
+        double dy = variables[v + 1] - variables[w + 1];
+        double dz = variables[v + 2] - variables[w + 2];
+        scatter[0] += dx * dx;
+        scatter[1] += dx * dy;
+        scatter[2] += dx * dz;
+        scatter[3] += dy * dy;
+        scatter[4] += dy * dz;
+        scatter[5] += dz * dz;
+    }
+
+    /**
+     * Replace {@link #fit} by the normalized product of the adjugate of {@link #scatter} with it, i.e., a
+     * multiple of the solution of scatter x = fit, which also exists when the face is exactly planar.
+     *
+     * @return false when the product is zero, e.g., for a face whose vertices are collinear, in which
+     * case fit is left unchanged
+     */
+    private boolean inverseIteration() {
+        double xx = scatter[0];
+        double xy = scatter[1];
+        double xz = scatter[2];
+        double yy = scatter[3];
+        double yz = scatter[4];
+        double zz = scatter[5];
+        double x = (yy * zz - yz * yz) * fit[0] + (xz * yz - xy * zz) * fit[1] + (xy * yz - xz * yy) * fit[2];
+        double y = (xz * yz - xy * zz) * fit[0] + (xx * zz - xz * xz) * fit[1] + (xy * xz - xx * yz) * fit[2];
+        double z = (xy * yz - xz * yy) * fit[0] + (xy * xz - xx * yz) * fit[1] + (xx * yy - xy * xy) * fit[2];
+        double norm = Math.sqrt(x * x + y * y + z * z);
+        if (!(norm > 0.0)) {
+            return false;
+        }
+        fit[0] = x / norm;
+        fit[1] = y / norm;
+        fit[2] = z / norm;
+        return true;
+    }
+
+    /**
+     * Normalize the given vector in place.
+     *
+     * @return false when it is zero
+     */
+    private static boolean normalize(double[] vector) {
+        double norm = Math.sqrt(vector[0] * vector[0] + vector[1] * vector[1] + vector[2] * vector[2]);
+        if (!(norm > 0.0)) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            vector[i] /= norm;
+        }
+        return true;
+    }
+
+    /**
+     * Sum of the squares of the equations of a single face, with the incidences from start (inclusive) to
+     * end (exclusive), when its normal were the vector in normal starting at position n. Infinite for a zero
+     * normal.
+     */
+    private double normalFit(double[] variables, int start, int end, double[] normal, int n) {
+        double length = normal[n] * normal[n] + normal[n + 1] * normal[n + 1] + normal[n + 2] * normal[n + 2];
+        if (length == 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double total = (length - 1.0) * (length - 1.0);
+        for (int p = start; p < end; p += 3) {
+            int v = incidences[p];
+            int w = incidences[p + 1];
+            double value = 0.0;
+            for (int i = 0; i < 3; i++) {
+                value += normal[n + i] * (variables[v + i] - variables[w + i]);
+            }
+            total += value * value;
+        }
+        return total;
+    }
+
+    /**
+     * Value of the incidence at the given position in {@link #incidences}.
+     */
+    private double incidenceValue(double[] variables, int p) {
+        int v = incidences[p];
+        int w = incidences[p + 1];
+        int n = incidences[p + 2];
+        return variables[n] * (variables[v] - variables[w]) + variables[n + 1] * (variables[v + 1] - variables[w + 1])
+                + variables[n + 2] * (variables[v + 2] - variables[w + 2]);
+    }
+
+    private static double normalValue(double[] variables, int n) {
+        return variables[n] * variables[n] + variables[n + 1] * variables[n + 1] + variables[n + 2] * variables[n + 2] - 1.0;
+    }
+
+    /**
+     * Store the partials of the incidence at the given position in {@link #incidences} into result. Partials are
+     * stored in the order vx, vy, vz, wx, wy, wz, nx, ny, nz.
+     */
+    void incidencePartials(double[] result, double[] variables, int p) {
+        int v = incidences[p];
+        int w = incidences[p + 1];
+        int n = incidences[p + 2];
+        for (int i = 0; i < 3; i++) {
+            result[i] = variables[n + i];
+            result[3 + i] = -variables[n + i];
+            result[6 + i] = variables[v + i] - variables[w + i];
+        }
+    }
+
+    /**
+     * Store the partials of the equation of the normal with the given index into result.
+     */
+    void normalPartials(double[] result, double[] variables, int f) {
+        int n = normals[f];
+        for (int i = 0; i < 3; i++) {
+            result[i] = 2.0 * variables[n + i];
+        }
+    }
+
+    /**
+     * Compute the values of the equations with local index from (inclusive) to (exclusive) and store them into
+     * result, from the given offset onwards.
+     */
+    void values(double[] variables, int from, int to, double[] result, int offset) {
+        int firstNormal = nrOfIncidences();
+        for (int i = from; i < Math.min(to, firstNormal); i++) {
+            result[offset + i] = incidenceValue(variables, 3 * i);
+        }
+        for (int i = Math.max(from, firstNormal); i < to; i++) {
+            result[offset + i] = normalValue(variables, normals[i - firstNormal]);
+        }
+    }
+
+    /**
+     * Sum of the squares of the weighted equations.
+     */
+    double objective(double[] variables, double[] weights, int offset) {
+        double total = 0.0;
+        int c = offset;
+        for (int p = 0; p < incidences.length; p += 3) {
+            double value = weights[c] * incidenceValue(variables, p);
+            total += value * value;
+            c++;
+        }
+        for (int n : normals) {
+            double value = weights[c] * normalValue(variables, n);
+            total += value * value;
+            c++;
+        }
+        return total;
+    }
+
+    /**
+     * Store the squared norms of the gradients of the equations into result, from the given offset onwards.
+     *
+     * @param partials work space for at least 9 partials
+     * @return the sum of these norms
+     */
+    double rowNorms(double[] variables, double[] result, int offset, double[] partials) {
+        double sum = 0.0;
+        int c = offset;
+        for (int p = 0; p < incidences.length; p += 3) {
+            incidencePartials(partials, variables, p);
+            double total = 0.0;
+            for (int i = 0; i < 9; i++) {
+                total += partials[i] * partials[i];
+            }
+            result[c] = total;
+            sum += total;
+            c++;
+        }
+        for (int n : normals) {
+            result[c] = 4.0 * (normalValue(variables, n) + 1.0); // partials are 2n
+            sum += result[c];
+            c++;
+        }
+        return sum;
+    }
+
+    /**
+     * Compute the weighted products of the rows of the Jacobean at the given variables with vector, and
+     * store them into result, from the given offset onwards.
+     */
+    void multJacobean(double[] variables, double[] vector, double[] weights, double[] result, int offset) {
+        int c = offset;
+        for (int p = 0; p < incidences.length; p += 3) {
+            int v = incidences[p];
+            int w = incidences[p + 1];
+            int n = incidences[p + 2];
+            double total = 0.0;
+            for (int i = 0; i < 3; i++) {
+                total += variables[n + i] * (vector[v + i] - vector[w + i])
+                        + (variables[v + i] - variables[w + i]) * vector[n + i];
+            }
+            result[c] = total * weights[c];
+            c++;
+        }
+        for (int n : normals) {
+            double total = 0.0;
+            for (int i = 0; i < 3; i++) {
+                total += 2.0 * variables[n + i] * vector[n + i];
+            }
+            result[c] = total * weights[c];
+            c++;
+        }
+    }
+
+    /**
+     * Add the transposed Jacobean at the given variables, times the weighted entries of vector from the given
+     * offset onwards, to result.
+     */
+    void addTransJacobean(double[] variables, double[] vector, double[] weights, int offset, double[] result) {
+        int c = offset;
+        for (int p = 0; p < incidences.length; p += 3) {
+            int v = incidences[p];
+            int w = incidences[p + 1];
+            int n = incidences[p + 2];
+            double value = vector[c] * weights[c];
+            for (int i = 0; i < 3; i++) {
+                result[v + i] += variables[n + i] * value;
+                result[w + i] -= variables[n + i] * value;
+                result[n + i] += (variables[v + i] - variables[w + i]) * value;
+            }
+            c++;
+        }
+        for (int n : normals) {
+            double value = vector[c] * weights[c];
+            for (int i = 0; i < 3; i++) {
+                result[n + i] += 2.0 * variables[n + i] * value;
+            }
+            c++;
+        }
+    }
+
+    /**
+     * Add the squared weighted partials of the equations to the entries of result for the corresponding
+     * variables.
+     */
+    void addColumnNorms(double[] variables, double[] weights, int offset, double[] result) {
+        int c = offset;
+        for (int p = 0; p < incidences.length; p += 3) {
+            int v = incidences[p];
+            int w = incidences[p + 1];
+            int n = incidences[p + 2];
+            double weight = weights[c] * weights[c];
+            for (int i = 0; i < 3; i++) {
+                double d = variables[v + i] - variables[w + i];
+                result[v + i] += variables[n + i] * variables[n + i] * weight;
+                result[w + i] += variables[n + i] * variables[n + i] * weight;
+                result[n + i] += d * d * weight;
+            }
+            c++;
+        }
+        for (int n : normals) {
+            double weight = weights[c] * weights[c];
+            for (int i = 0; i < 3; i++) {
+                result[n + i] += 4.0 * variables[n + i] * variables[n + i] * weight;
+            }
+            c++;
+        }
+    }
+
+    /**
+     * Compute the values of the equations in double-double arithmetic for the variables high + low, and store
+     * them, rounded to double, into result from the given offset onwards.
+     */
+    void exactValues(double[] high, double[] low, double[] result, int offset) {
+        DoubleDouble total = new DoubleDouble();
+        DoubleDouble d = new DoubleDouble();
+        int c = offset;
+        for (int p = 0; p < incidences.length; p += 3) {
+            total.set(0.0, 0.0);
+            for (int i = 0; i < 3; i++) {
+                d.setDifference(high, low, incidences[p] + i, incidences[p + 1] + i);
+                d.multiply(high[incidences[p + 2] + i], low[incidences[p + 2] + i]);
+                total.add(d);
+            }
+            result[c] = total.doubleValue();
+            c++;
+        }
+        for (int n : normals) {
+            total.set(-1.0, 0.0);
+            for (int i = 0; i < 3; i++) {
+                d.set(high[n + i], low[n + i]);
+                d.multiply(d);
+                total.add(d);
+            }
+            result[c] = total.doubleValue();
+            c++;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* LevenbergMarquardt.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Implements {@link GaussNewtonSolver.StepStrategy#LEVENBERG_MARQUARDT}.
+ */
+class LevenbergMarquardt implements Stepper {
+
+    /**
+     * Initial damping factor.
+     */
+    private static final double INITIAL_DAMPING = 1.0E-3;
+
+    /**
+     * Maximum number of times the damping is increased within a single step.
+     */
+    private static final int MAX_ATTEMPTS = 20;
+
+    /**
+     * Upper bound for the damping factor. Larger values only produce steps that are too small to change
+     * the coordinates.
+     */
+    private static final double MAX_DAMPING = 1.0E16;
+
+    private final GaussNewtonSolver solver;
+
+    private final SolverWorkspace workspace;
+
+    /**
+     * Current damping factor. Carried over from one step to the next.
+     */
+    private double damping = INITIAL_DAMPING;
+
+    /**
+     * Factor by which the damping is increased when a step is rejected. Doubles after every rejection.
+     */
+    private double dampingIncrease = 2.0;
+
+    LevenbergMarquardt(GaussNewtonSolver solver, SolverWorkspace workspace) {
+        this.solver = solver;
+        this.workspace = workspace;
+    }
+
+    /**
+     * Tries increasing damping factors until a step is found that improves the accuracy. Typically this needs only
+     * a single evaluation of the equations.
+     */
+    @Override
+    public void step(double[] variables) {
+        double accuracy = solver.objective();
+        double[] gradient = solver.getGradient();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            double[] direction = solver.computeDirection(damping);
+            if (direction != null) {
+                // reduction of the accuracy predicted by the linear model, for the direction as it is used,
+                // i.e., with the gauge fixed and the rigid motion removed
+                double[] q = workspace.product;
+                solver.multJacobean(direction, q);
+                double predicted = 2.0 * GaussNewtonSolver.dot(direction, gradient) - GaussNewtonSolver.dot(q, q);
+                double[] result = workspace.trialVariables;
+                for (int i = 0; i < variables.length; i++) {
+                    result[i] = variables[i] - direction[i];
+                }
+                double gain = (accuracy - solver.evaluateObjective(result)) / predicted;
+                if (predicted > 0.0 && gain > 0.0) {
+                    double factor = 2.0 * gain - 1.0;
+                    damping *= Math.max(1.0 / 3.0, 1.0 - factor * factor * factor);
+                    dampingIncrease = 2.0;
+                    System.arraycopy(result, 0, variables, 0, variables.length);
+                    return;
+                }
+                if (solver.isMatrixFree()) {
+                    solver.computeValuesOnly(variables); // CGLS starts from the values at the current variables
+                }
+            }
+            damping = Math.min(damping * dampingIncrease, MAX_DAMPING);
+            dampingIncrease *= 2.0;
+        }
+        // no improvement possible, restore values and start the next step afresh
+        restart();
+        solver.computeValuesOnly(variables);
+    }
+
+    @Override
+    public void restart() {
+        damping = INITIAL_DAMPING;
+        dampingIncrease = 2.0;
+    }
+}
@@ -0,0 +1,115 @@
+/* LineSearch.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Implements {@link GaussNewtonSolver.StepStrategy#LINE_SEARCH} and
+ * {@link GaussNewtonSolver.StepStrategy#SPECULATIVE_LINE_SEARCH}.
+ */
+class LineSearch implements Stepper {
+
+    private static final double GR = (Math.sqrt(5.0) - 1.0) / 2.0;
+
+    /**
+     * Length of the interval of step lengths at which a search stops.
+     */
+    static final double EPSILON = 1.0E-3;
+
+    private final GaussNewtonSolver solver;
+
+    private final SolverWorkspace workspace;
+
+    /**
+     * Whether to use {@link GaussNewtonSolver#speculativeSearch} instead of a golden section search.
+     */
+    private final boolean speculative;
+
+    LineSearch(GaussNewtonSolver solver, SolverWorkspace workspace, boolean speculative) {
+        this.solver = solver;
+        this.workspace = workspace;
+        this.speculative = speculative;
+    }
+
+    @Override
+    public void step(double[] variables) {
+        double objective = solver.objective();
+        double[] direction = solver.computeDirection(0.0);
+        if (direction == null) {
+            // no direction
+        } else if (solver.convergesQuadratically()
+                && solver.acceptFullStep(variables, direction, GaussNewtonSolver.FULL_STEP_RATIO * objective)) {
+            // quadratic convergence
+        } else if (speculative) {
+            solver.speculativeSearch(variables, direction);
+        } else {
+            goldenRatioSearch(variables, direction);
+        }
+    }
+
+    @Override
+    public void restart() {
+        // nothing carried over
+    }
+
+    /**
+     * Replace the variables by the best multiple of the direction that can be found.
+     */
+    private void goldenRatioSearch(double[] variables, double[] direction) {
+        double[] oldVariables = workspace.oldVariables;
+        System.arraycopy(variables, 0, oldVariables, 0, variables.length);
+
+        double lambda1 = 0.2;
+        double lambda4 = 2.0;
+        double lambda3 = lambda1 + GR * (lambda4 - lambda1);
+        double lambda2 = lambda4 - GR * (lambda4 - lambda1);
+
+        double f2 = solver.getEstimate(lambda2, oldVariables, direction);
+        double f3 = solver.getEstimate(lambda3, oldVariables, direction);
+
+        while (lambda3 - lambda2 > EPSILON) {
+            if (f2 < f3) {
+                lambda4 = lambda3;
+                lambda3 = lambda2;
+                f3 = f2;
+                lambda2 = lambda4 - GR * (lambda4 - lambda1);
+                f2 = solver.getEstimate(lambda2, oldVariables, direction);
+            } else {
+                lambda1 = lambda2;
+                lambda2 = lambda3;
+                f2 = f3;
+                lambda3 = lambda1 + GR * (lambda4 - lambda1);
+                f3 = solver.getEstimate(lambda3, oldVariables, direction);
+            }
+        }
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = oldVariables[i] - (lambda2 + lambda3) / 2 * direction[i];
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/* MinimumDegreeOrdering.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Computes a fill reducing elimination order for the vertices of a graph, using the minimum degree
+ * heuristic. For planar graphs this keeps the fill of a Cholesky factorization small.
+ */
+final class MinimumDegreeOrdering {
+
+    private MinimumDegreeOrdering() {
+        // not to be instantiated
+    }
+
+    /**
+     * Compute an elimination order for the graph with the given adjacency lists.
+     *
+     * @param adjacency For every vertex, the list of its neighbours. The lists must be symmetric and should not
+     *                  contain the vertex itself.
+     * @return Array of vertex numbers, in the order in which they should be eliminated
+     */
+    static int[] compute(int[][] adjacency) {
+        int n = adjacency.length;
+
+        // adjacency lists of the elimination graph, with their current sizes
+        int[][] neighbours = new int[n][];
+        int[] degree = new int[n];
+        for (int v = 0; v < n; v++) {
+            neighbours[v] = adjacency[v].clone();
+            degree[v] = neighbours[v].length;
+        }
+
+        // queue entries are (degree, vertex) pairs, outdated entries are skipped
+        PriorityQueue<long[]> queue = new PriorityQueue<>(n, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        for (int v = 0; v < n; v++) {
+            queue.add(new long[]{degree[v], v});
+        }
+
+        boolean[] eliminated = new boolean[n];
+        int[] mark = new int[n];
+        int stamp = 0;
+        int[] order = new int[n];
+        int count = 0;
+        while (count < n) {
+            long[] entry = queue.poll();
+            int v = (int) entry[1];
+            if (eliminated[v] || entry[0] != degree[v]) {
+                continue; // outdated
+            }
+            eliminated[v] = true;
+            order[count] = v;
+            count++;
+
+            // the remaining neighbours of v become a clique
+            int[] nbs = neighbours[v];
+            int size = degree[v];
+            for (int i = 0; i < size; i++) {
+                int u = nbs[i];
+                int[] list = neighbours[u];
+                stamp++;
+                int newSize = 0;
+                // remove v and mark what remains
+                for (int j = 0; j < degree[u]; j++) {
+                    int w = list[j];
+                    if (w != v) {
+                        mark[w] = stamp;
+                        list[newSize] = w;
+                        newSize++;
+                    }
+                }
+                mark[u] = stamp;
+                // add the missing neighbours of v
+                for (int j = 0; j < size; j++) {
+                    int w = nbs[j];
+                    if (mark[w] != stamp) {
+                        if (newSize == list.length) {
+                            list = Arrays.copyOf(list, 2 * newSize + 1);
+                        }
+                        list[newSize] = w;
+                        newSize++;
+                    }
+                }
+                neighbours[u] = list;
+                if (newSize != degree[u]) {
+                    degree[u] = newSize;
+                    queue.add(new long[]{newSize, u});
+                }
+            }
+            neighbours[v] = null;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,59 @@
+/* NormalEquationSolver.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Linear algebra backend of the direction methods of {@link GaussNewtonSolver} that store J^T J. Solves
+ * the normal equations for a matrix that is given as a {@link BlockSymmetricMatrix} in elimination order.
+ */
+interface NormalEquationSolver {
+
+    /**
+     * Prepare for matrices with the block structure of the given matrix. Called once, before
+     * any factorization.
+     */
+    void analyze(BlockSymmetricMatrix matrix);
+
+    /**
+     * Factorize the given matrix, which must have the same block structure as the matrix
+     * passed to {@link #analyze}.
+     *
+     * @return false if the matrix turned out to be (numerically) singular
+     */
+    boolean factorize(BlockSymmetricMatrix matrix);
+
+    /**
+     * Solve the system for the last matrix that was factorized. The contents of rhs is destroyed,
+     * rhs and result may be the same array.
+     *
+     * @return false if the matrix turned out to be (numerically) singular
+     */
+    boolean solve(double[] rhs, double[] result);
+}
@@ -33,7 +33,14 @@ import be.ugent.caagt.equi.EmbeddedPlanarGraph;
 import be.ugent.caagt.equi.PlanarGraph;
 import be.ugent.caagt.equi.grp.CombinedGroup;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main planarization code
@@ -42,22 +49,69 @@ public class PlanarizationEngine {
 
     private GaussNewtonSolver solver;
 
+    private final PlanarGraph graph;
+
+    /**
+     * Solver that only solves for embeddings with the symmetry of the current group, or null
+     * when it has not been created yet.
+     */
+    private GaussNewtonSolver reducedSolver;
+
+    private boolean orbitReduction;
+
+    // settings shared by both solvers
+
+    private GaussNewtonSolver.DirectionMethod directionMethod = GaussNewtonSolver.DirectionMethod.AUTOMATIC;
+
+    private GaussNewtonSolver.StepStrategy stepStrategy = GaussNewtonSolver.StepStrategy.LINE_SEARCH;
+
+    private int parallelism = 1;
+
+    private int maxChordSteps = 0;
+
+    private boolean equilibration = false;
+
+    private boolean structOfArrays = false;
+
+    private boolean mixedPrecision = false;
+
+    private GaussNewtonSolver.Planarity planarity = GaussNewtonSolver.Planarity.QUADS;
+
     /**
      * Coordinates of the vertices of the current polyhedron. In the order x0, y0, z0, x1, y1, z1,...
      */
     private double[] variables;
 
-    private int[][] edges;
+    /**
+     * End points of all edges, two per edge, multiplied by 3.
+     */
+    private int[] edges;
 
     private CombinedGroup group;
 
     public static final Random RG = new Random(4287649098235098324L);
 
+    /**
+     * Default target accuracy of a {@link #portfolio}.
+     */
+    public static final double DEFAULT_PORTFOLIO_TARGET = 1.0E-20;
+
+    /**
+     * Default number of milliseconds for which every member of a {@link #portfolio} performs steps.
+     */
+    public static final long DEFAULT_PORTFOLIO_MILLISECONDS = 15000L;
+
+    /**
+     * Random generator used for starting coordinates and perturbations. Shared by all engines, except
+     * for the members of a portfolio, which each have their own.
+     */
+    private Random random = RG;
+
     public void initRandomCoordinates() {
         for (int i = 0; i < variables.length; i++) {
-            variables[i] = 3.0 * RG.nextDouble() - 1.5;
+            variables[i] = 3.0 * random.nextDouble() - 1.5;
         }
-
+        restartSolvers();
     }
 
     private void initCoordinatesFromGraph(EmbeddedPlanarGraph graph) {
@@ -73,16 +127,257 @@ public class PlanarizationEngine {
 
 
     public void setGroup(CombinedGroup group) {
+        if (group != this.group) {
+            releaseReducedSolver();
+            if (anderson != null) {
+                anderson.restart();
+            }
+        }
         this.group = group;
     }
 
+    private void releaseReducedSolver() {
+        if (reducedSolver != null) {
+            reducedSolver.setParallelism(1); // shuts down its threads
+            reducedSolver = null;
+        }
+    }
+
+    /**
+     * When set, steps only solve for the coordinates of the representatives of the point orbits
+     * of the group, and only for one edge and quad of every orbit. This makes steps much cheaper
+     * for large groups. Has no effect for the trivial group.
+     */
+    public void setOrbitReduction(boolean orbitReduction) {
+        this.orbitReduction = orbitReduction;
+        if (!orbitReduction) {
+            releaseReducedSolver();
+        }
+    }
+
+    /**
+     * Solver to be used for the next steps.
+     */
+    private GaussNewtonSolver stepSolver() {
+        if (!orbitReduction || group == null || group.getOrder() <= 1) {
+            return solver;
+        }
+        if (reducedSolver == null) {
+            reducedSolver = new GaussNewtonSolver(graph, group);
+            configure(reducedSolver);
+        }
+        return reducedSolver;
+    }
+
+    /**
+     * Make the solvers and the acceleration forget the state they carry over from one step to the next,
+     * because the coordinates were changed by other means than a step.
+     */
+    private void restartSolvers() {
+        solver.restart();
+        if (reducedSolver != null) {
+            reducedSolver.restart();
+        }
+        if (anderson != null) {
+            anderson.restart();
+        }
+    }
+
+    private void configure(GaussNewtonSolver s) {
+        s.setDirectionMethod(directionMethod);
+        s.setStepStrategy(stepStrategy);
+        s.setParallelism(parallelism);
+        s.setMaxChordSteps(maxChordSteps);
+        s.setEquilibration(equilibration);
+        s.setStructOfArrays(structOfArrays);
+        s.setMixedPrecision(mixedPrecision);
+    }
+
+    /**
+     * Select the method used by the solver to compute directions of optimization. Defaults to
+     * {@link GaussNewtonSolver.DirectionMethod#AUTOMATIC}, which chooses a method depending on the size
+     * of the graph. Other values override this choice, e.g., for benchmarking.
+     */
+    public void setDirectionMethod(GaussNewtonSolver.DirectionMethod method) {
+        this.directionMethod = method;
+        solver.setDirectionMethod(method);
+        if (reducedSolver != null) {
+            reducedSolver.setDirectionMethod(method);
+        }
+    }
+
+    /**
+     * Select the strategy used by the solver to turn directions of optimization into steps.
+     */
+    public void setStepStrategy(GaussNewtonSolver.StepStrategy strategy) {
+        this.stepStrategy = strategy;
+        solver.setStepStrategy(strategy);
+        if (reducedSolver != null) {
+            reducedSolver.setStepStrategy(strategy);
+        }
+    }
+
+    /**
+     * Set the number of threads used by the solver to evaluate the equations and to factorize dense normal
+     * equations. Defaults to 1.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        solver.setParallelism(parallelism);
+        if (reducedSolver != null) {
+            reducedSolver.setParallelism(parallelism);
+        }
+    }
+
+    /**
+     * Stop the threads of all solvers of this engine. The engine can still be used afterwards, but runs on the
+     * calling thread, as with parallelism 1.
+     */
+    public void close() {
+        parallelism = 1;
+        solver.setParallelism(1);
+        releaseReducedSolver();
+    }
+
+    /**
+     * Allow the solver to reuse the Jacobean of an earlier step for at most the given number of
+     * consecutive steps. Makes steps cheaper near convergence. Defaults to 0.
+     */
+    public void setMaxChordSteps(int maxChordSteps) {
+        this.maxChordSteps = maxChordSteps;
+        solver.setMaxChordSteps(maxChordSteps);
+        if (reducedSolver != null) {
+            reducedSolver.setMaxChordSteps(maxChordSteps);
+        }
+    }
+
+    /**
+     * Rescale equations and variables at the start of every step of the solver. Helps when
+     * the coordinates are far from unit scale. Off by default.
+     */
+    public void setEquilibration(boolean equilibration) {
+        this.equilibration = equilibration;
+        solver.setEquilibration(equilibration);
+        if (reducedSolver != null) {
+            reducedSolver.setEquilibration(equilibration);
+        }
+    }
+
+    /**
+     * Evaluate the equations on a struct-of-arrays copy of the coordinates, in blocks that can use SIMD
+     * instructions. Mostly useful for large graphs. Off by default.
+     */
+    public void setStructOfArrays(boolean structOfArrays) {
+        this.structOfArrays = structOfArrays;
+        solver.setStructOfArrays(structOfArrays);
+        if (reducedSolver != null) {
+            reducedSolver.setStructOfArrays(structOfArrays);
+        }
+    }
+
+    /**
+     * Store the sparse Cholesky factorization in single precision during the early steps, which halves its
+     * memory. Directions are refined in double precision, and the last steps use a factorization in double
+     * precision, so the final accuracy is unaffected. Off by default.
+     */
+    public void setMixedPrecision(boolean mixedPrecision) {
+        this.mixedPrecision = mixedPrecision;
+        solver.setMixedPrecision(mixedPrecision);
+        if (reducedSolver != null) {
+            reducedSolver.setMixedPrecision(mixedPrecision);
+        }
+    }
+
+    /**
+     * Select how the solver requires faces to be planar. Applies to the solver that is not reduced by a group,
+     * and hence also to the accuracy reported by {@link #computeAccuracy}. Defaults to
+     * {@link GaussNewtonSolver.Planarity#QUADS}.
+     */
+    public void setPlanarity(GaussNewtonSolver.Planarity planarity) {
+        if (planarity != this.planarity) {
+            this.planarity = planarity;
+            solver.setParallelism(1); // shuts down its threads
+            solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP, planarity);
+            configure(solver);
+        }
+    }
+
+    /**
+     * Accelerates the iteration of steps and symmetrization, or null when not used.
+     */
+    private AndersonAcceleration anderson;
+
+    private int andersonDepth;
+
+    /**
+     * Coordinates before the last step and the accelerated coordinates, used with Anderson acceleration.
+     */
+    private double[] previousVariables;
+    private double[] acceleratedVariables;
+
+    /**
+     * Use Anderson acceleration over the given number of previous iterates when performing consecutive
+     * steps. An accelerated iterate is only used when it is more accurate than the result of the step
+     * itself, otherwise the acceleration restarts. A depth of 0 (the default) turns acceleration off.
+     */
+    public void setAndersonDepth(int depth) {
+        this.andersonDepth = depth;
+        if (depth > 0) {
+            this.anderson = new AndersonAcceleration(depth, variables.length);
+            this.previousVariables = new double[variables.length];
+            this.acceleratedVariables = new double[variables.length];
+        } else {
+            this.anderson = null;
+            this.previousVariables = null;
+            this.acceleratedVariables = null;
+        }
+    }
+
+    /**
+     * Perform a single step followed by symmetrization, accelerated when requested. Centering in between
+     * does not disturb the acceleration, other changes to the coordinates must restart it.
+     *
+     * @return the accuracy of the result, as reported by the step
+     */
+    private double iterate(GaussNewtonSolver stepSolver) {
+        if (anderson == null) {
+            variables = stepSolver.step(variables);
+            group.symmetrize(variables);
+            return stepSolver.getAccuracy();
+        }
+        System.arraycopy(variables, 0, previousVariables, 0, variables.length);
+        variables = stepSolver.step(variables);
+        group.symmetrize(variables);
+        double accuracy = stepSolver.getAccuracy();
+        if (anderson.accelerate(previousVariables, variables, acceleratedVariables)) {
+            double accelerated = stepSolver.computeAccuracy(acceleratedVariables);
+            if (accelerated < accuracy) {
+                System.arraycopy(acceleratedVariables, 0, variables, 0, variables.length);
+                return accelerated;
+            }
+            anderson.restart();
+        }
+        return accuracy;
+    }
+
+    /**
+     * Center the polyhedron after a number of steps.
+     */
+    private void finishSteps() {
+        center();
+    }
+
     public PlanarizationEngine(PlanarGraph graph) {
+        this.graph = graph;
         this.solver = new GaussNewtonSolver(graph);
+        configure(solver);
 
         int s = graph.getSize();
-        edges = new int[s][];
+        edges = new int[2 * s];
         for (int i = 0; i < s; i++) {
-            edges[i] = graph.getEdge(i);
+            int[] edge = graph.getEdge(i);
+            edges[2 * i] = 3 * edge[0];
+            edges[2 * i + 1] = 3 * edge[1];
         }
 
         this.variables = new double[3 * graph.getOrder()];
@@ -95,22 +390,23 @@ public class PlanarizationEngine {
 
     private double averageEdgeLength() {
         double sum = 0.0;
-        for (int[] edge : edges) {
-            int co0 = edge[0];
-            int co1 = edge[1];
+        for (int e = 0; e < edges.length; e += 2) {
+            int co0 = edges[e];
+            int co1 = edges[e + 1];
             double total = 0.0;
             for (int i = 0; i < 3; i++) {
-                total += (variables[3*co0 + i] - variables[3*co1 + i]) * (variables[3*co0 + i] - variables[3*co1 + i]);
+                total += (variables[co0 + i] - variables[co1 + i]) * (variables[co0 + i] - variables[co1 + i]);
             }
             sum += Math.sqrt(total);
         }
-        return sum / edges.length;
+        return sum / (edges.length / 2);
     }
 
     public void rescale(double factor) {
         for (int i = 0; i < variables.length; i++) {
             variables[i] *= factor;
         }
+        restartSolvers();
     }
 
     public void randomPerturbation(double step) {
@@ -119,19 +415,21 @@ public class PlanarizationEngine {
             if (Double.isNaN(orig)) {
                 orig = 0.0;
             }
-            variables[i] = orig + (RG.nextDouble() - 0.5) * step;
+            variables[i] = orig + (random.nextDouble() - 0.5) * step;
         }
+        restartSolvers();
     }
 
     public void skew() {
-        double xFactor = RG.nextDouble() * 1.5 + 0.5;
-        double yFactor = RG.nextDouble() * 1.5 + 0.5;
-        double zFactor = RG.nextDouble() * 1.5 + 0.5;
+        double xFactor = random.nextDouble() * 1.5 + 0.5;
+        double yFactor = random.nextDouble() * 1.5 + 0.5;
+        double zFactor = random.nextDouble() * 1.5 + 0.5;
         for (int i = 0; i < variables.length; i += 3) {
             variables[i] *= xFactor;
             variables[i + 1] *= yFactor;
             variables[i + 2] *= zFactor;
         }
+        restartSolvers();
     }
 
     public void onSphere() {
@@ -144,6 +442,7 @@ public class PlanarizationEngine {
             variables[i + 1] /= factor;
             variables[i + 2] /= factor;
         }
+        restartSolvers();
     }
 
     public void center() {
@@ -168,29 +467,157 @@ public class PlanarizationEngine {
     }
 
     public void singleStep() {
-        variables = solver.step(variables);
-        group.symmetrize(variables);
-        center();
+        iterate(stepSolver());
+        finishSteps();
     }
 
     public void timedStep(long milliseconds) {
         long time = System.currentTimeMillis();
-        double ac = solver.computeAccuracy(variables);
-        variables = solver.step(variables);
-        group.symmetrize(variables);
-        while (solver.getAccuracy() > ac * 1.0e-8 && System.currentTimeMillis() < time + milliseconds) {
-            variables = solver.step(variables);
-            group.symmetrize(variables);
+        GaussNewtonSolver stepSolver = stepSolver();
+        double ac = stepSolver.computeAccuracy(variables);
+        double accuracy = iterate(stepSolver);
+        while (accuracy > ac * 1.0e-8 && System.currentTimeMillis() < time + milliseconds) {
+            accuracy = iterate(stepSolver);
         }
-        center();
+        finishSteps();
     }
 
     public void multipleSteps(int count) {
+        GaussNewtonSolver stepSolver = stepSolver();
         for (int i = 0; i < count; i++) {
-            variables = solver.step(variables);
-            group.symmetrize(variables);
+            iterate(stepSolver);
+        }
+        finishSteps();
+    }
+
+    /**
+     * Starting coordinates of a member of a portfolio, see {@link #portfolio}.
+     */
+    public enum Start {
+        /**
+         * Random coordinates followed by a large perturbation, as for a new polyhedron.
+         */
+        RANDOM,
+        /**
+         * Random coordinates projected onto a sphere.
+         */
+        SPHERE,
+        /**
+         * The current coordinates, slightly perturbed and skewed.
+         */
+        SKEW
+    }
+
+    /**
+     * Run the given number of independent engines concurrently, each from its own starting coordinates
+     * and random seed, cycling through the values of {@link Start}. Every member performs steps for at most
+     * the given number of milliseconds, and all members stop as soon as one of them reaches the target accuracy.
+     * The most accurate result replaces the current coordinates, unless none of them is more accurate than
+     * the current coordinates themselves.<p>
+     * Members use the settings of this engine, except that every member runs on a single thread.
+     */
+    public void portfolio(int nrOfMembers, long milliseconds, double targetAccuracy) {
+        Start[] starts = Start.values();
+        List<PlanarizationEngine> members = new ArrayList<>();
+        for (int i = 0; i < nrOfMembers; i++) {
+            members.add(createMember(starts[i % starts.length], RG.nextLong()));
+        }
+
+        AtomicBoolean solved = new AtomicBoolean();
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (PlanarizationEngine member : members) {
+            tasks.add(() -> member.runMember(milliseconds, targetAccuracy, solved));
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(nrOfMembers, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Double>> results = pool.invokeAll(tasks);
+            double bestAccuracy = computeAccuracy();
+            PlanarizationEngine best = null;
+            for (int i = 0; i < nrOfMembers; i++) {
+                double accuracy = results.get(i).get();
+                if (accuracy < bestAccuracy || Double.isNaN(bestAccuracy)) {
+                    bestAccuracy = accuracy;
+                    best = members.get(i);
+                }
+            }
+            if (best != null) {
+                System.arraycopy(best.variables, 0, variables, 0, variables.length);
+                restartSolvers();
+            }
+        } catch (InterruptedException ex) {
+            solved.set(true); // stops the members that are still running
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Portfolio member failed", ex.getCause());
+        } finally {
+            pool.shutdown();
         }
-        center();
+    }
+
+    /**
+     * Create an engine with the same graph, group and settings as this one, running on a single thread,
+     * with the given starting coordinates.
+     */
+    private PlanarizationEngine createMember(Start start, long seed) {
+        PlanarizationEngine member = new PlanarizationEngine(graph);
+        member.random = new Random(seed);
+        member.setPlanarity(planarity);
+        member.setGroup(group);
+        member.setOrbitReduction(orbitReduction);
+        member.setDirectionMethod(directionMethod);
+        member.setStepStrategy(stepStrategy);
+        member.setMaxChordSteps(maxChordSteps);
+        member.setEquilibration(equilibration);
+        member.setStructOfArrays(structOfArrays);
+        member.setMixedPrecision(mixedPrecision);
+        member.setAndersonDepth(andersonDepth);
+        switch (start) {
+            case RANDOM:
+                member.initRandomCoordinates();
+                member.randomPerturbation(5.0);
+                break;
+            case SPHERE:
+                member.initRandomCoordinates();
+                member.onSphere();
+                break;
+            case SKEW:
+                System.arraycopy(variables, 0, member.variables, 0, variables.length);
+                member.randomPerturbation(0.2);
+                member.skew();
+                break;
+        }
+        return member;
+    }
+
+    /**
+     * Perform steps as a member of a portfolio, until the time is up, the target accuracy is reached or
+     * another member has solved the problem. Returns the accuracy of the result.
+     */
+    private double runMember(long milliseconds, double targetAccuracy, AtomicBoolean solved) {
+        long deadline = System.currentTimeMillis() + milliseconds;
+        GaussNewtonSolver stepSolver = stepSolver();
+        while (!solved.get() && System.currentTimeMillis() < deadline) {
+            if (!(iterate(stepSolver) > targetAccuracy)) {
+                break; // reached the target, or diverged
+            }
+        }
+        finishSteps();
+        double accuracy = computeAccuracy();
+        if (accuracy <= targetAccuracy) {
+            solved.set(true);
+        }
+        return accuracy;
+    }
+
+    /**
+     * Polish the coordinates of a converged polyhedron in double-double arithmetic, see
+     * {@link GaussNewtonSolver#polish}. The polyhedron is not centered afterwards, as this would
+     * introduce new rounding errors. Always uses the solver that is not reduced by a group, also with
+     * orbit reduction, so a symmetric polyhedron only keeps its symmetry up to rounding errors.
+     */
+    public void polish() {
+        variables = solver.polish(variables);
+        restartSolvers();
     }
 
     public void symmetrize() {
@@ -202,4 +629,12 @@ public class PlanarizationEngine {
         return solver.computeAccuracy(variables);
     }
 
+    /**
+     * Accuracy where every equation is divided by the norm of its gradient, see
+     * {@link GaussNewtonSolver#computeNormalizedAccuracy}.
+     */
+    public double computeNormalizedAccuracy() {
+        return solver.computeNormalizedAccuracy(variables);
+    }
+
 }
@@ -0,0 +1,159 @@
+/* SolverWorkspace.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Arrays;
+
+/**
+ * Work arrays used by a {@link GaussNewtonSolver} while performing a step. These are allocated once
+ * for every solver, so that steps do not need to allocate memory.
+ */
+class SolverWorkspace {
+
+    /**
+     * Values of the variables at the start of a line search.
+     */
+    final double[] oldVariables;
+
+    /**
+     * Values of the variables at which the equations are evaluated during a line search
+     * or a Levenberg-Marquardt step.
+     */
+    final double[] trialVariables;
+
+    /**
+     * Direction of optimization.
+     */
+    final double[] direction;
+
+    /**
+     * Cauchy point and trial step of the dogleg method.
+     */
+    final double[] cauchyStep;
+    final double[] trialStep;
+
+    /**
+     * Right hand side and solution of the normal equations, in elimination order.
+     */
+    final double[] permuted;
+
+    /**
+     * Right hand side and residual of the normal equations during iterative refinement, in elimination order.
+     */
+    final double[] refinedRhs;
+    final double[] refinedResidual;
+
+    // vectors used by CGLS
+
+    final double[] residual;
+    final double[] product;
+    final double[] normalResidual;
+    final double[] searchDirection;
+    final double[] scaledSearchDirection;
+
+    /**
+     * Scale factor for every variable used by CGLS. All ones, unless equilibration is used.
+     */
+    final double[] columnScale;
+
+    /**
+     * Values of the equations multiplied by their weights.
+     */
+    final double[] weightedValues;
+
+    /**
+     * Weights used by the normalized accuracy.
+     */
+    final double[] normalizationWeights;
+
+    /**
+     * Coordinates at which the Jacobean is evaluated.
+     */
+    final double[] jacobeanCoordinates;
+
+    /**
+     * Values of the variables that correspond to the coordinates passed to the solver, for a solver whose
+     * variables are not simply the coordinates.
+     */
+    final double[] reducedVariables;
+
+    // vectors used by a solver that is reduced by a group, empty otherwise
+
+    /**
+     * Coordinates at which the equations are evaluated.
+     */
+    final double[] coordinates;
+
+    /**
+     * Vector indexed by coordinates, used by the products with the Jacobean.
+     */
+    final double[] expandedVector;
+
+    /**
+     * Coordinates of the four vertices of a quad, extended with a column of ones.
+     */
+    final double[][] faceMatrix;
+
+    /**
+     * Partials of a single quad.
+     */
+    final double[] quadPartials = new double[12];
+
+    SolverWorkspace(int nrOfVariables, int nrOfEquations, int nrOfCoordinates) {
+        this.oldVariables = new double[nrOfVariables];
+        this.trialVariables = new double[nrOfVariables];
+        this.direction = new double[nrOfVariables];
+        this.permuted = new double[nrOfVariables];
+        this.refinedRhs = new double[nrOfVariables];
+        this.refinedResidual = new double[nrOfVariables];
+        this.cauchyStep = new double[nrOfVariables];
+        this.trialStep = new double[nrOfVariables];
+
+        this.residual = new double[nrOfEquations];
+        this.product = new double[nrOfEquations];
+        this.normalResidual = new double[nrOfVariables];
+        this.searchDirection = new double[nrOfVariables];
+        this.scaledSearchDirection = new double[nrOfVariables];
+        this.columnScale = new double[nrOfVariables];
+        Arrays.fill(columnScale, 1.0);
+        this.weightedValues = new double[nrOfEquations];
+        this.normalizationWeights = new double[nrOfEquations];
+
+        this.reducedVariables = new double[nrOfVariables];
+        this.coordinates = new double[nrOfCoordinates];
+        this.jacobeanCoordinates = new double[nrOfCoordinates == 0 ? nrOfVariables : nrOfCoordinates];
+        this.expandedVector = new double[nrOfCoordinates];
+
+        this.faceMatrix = new double[4][4];
+        for (double[] row : faceMatrix) {
+            row[3] = 1.0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/* Stepper.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Implementation of a {@link GaussNewtonSolver.StepStrategy}: turns the Jacobean at the current variables into
+ * a new set of values for these variables. Keeps the state that is carried over from one step to the next.
+ */
+interface Stepper {
+
+    /**
+     * Update the variables in place. The values of the equations, the gradient and the Jacobean must already be
+     * known for the current variables. When no improvement is found, the variables are left unchanged and the values
+     * of the equations are those at the variables.
+     */
+    void step(double[] variables);
+
+    /**
+     * Forget the state carried over from one step to the next.
+     */
+    void restart();
+}
@@ -0,0 +1,141 @@
+/* TrustRegion.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+/**
+ * Implements {@link GaussNewtonSolver.StepStrategy#TRUST_REGION}.
+ */
+class TrustRegion implements Stepper {
+
+    /**
+     * Maximum number of times the radius is decreased within a single step.
+     */
+    private static final int MAX_ATTEMPTS = 20;
+
+    private final GaussNewtonSolver solver;
+
+    private final SolverWorkspace workspace;
+
+    /**
+     * Radius of the trust region, or 0 when not yet known. Carried over from one step to the next.
+     */
+    private double radius;
+
+    TrustRegion(GaussNewtonSolver solver, SolverWorkspace workspace) {
+        this.solver = solver;
+        this.workspace = workspace;
+    }
+
+    /**
+     * Tries decreasing trust region radii until a dogleg step is found that improves the accuracy. The Gauss-Newton
+     * direction and the Cauchy point are computed only once.
+     */
+    @Override
+    public void step(double[] variables) {
+        int n = variables.length;
+        double accuracy = solver.objective();
+        double[] gradient = solver.getGradient();
+        double[] newton = solver.computeDirection(0.0);
+        double[] q = workspace.product;
+
+        double gg = GaussNewtonSolver.dot(gradient, gradient);
+        if (gg == 0.0) {
+            return; // stationary point
+        }
+        solver.multJacobean(gradient, q);
+        double alpha = gg / GaussNewtonSolver.dot(q, q);
+        double[] cauchy = workspace.cauchyStep;
+        for (int i = 0; i < n; i++) {
+            cauchy[i] = alpha * gradient[i];
+        }
+        double cauchyNorm = alpha * Math.sqrt(gg);
+        double newtonNorm = newton == null ? Double.POSITIVE_INFINITY : Math.sqrt(GaussNewtonSolver.dot(newton, newton));
+        if (radius == 0.0) {
+            radius = Math.min(newtonNorm, cauchyNorm);
+            if (radius == Double.POSITIVE_INFINITY) {
+                radius = Math.sqrt(gg);
+            }
+        }
+
+        double[] step = workspace.trialStep;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (newtonNorm <= radius) {
+                System.arraycopy(newton, 0, step, 0, n);
+            } else if (newton == null || cauchyNorm >= radius) {
+                double factor = radius / Math.sqrt(gg);
+                for (int i = 0; i < n; i++) {
+                    step[i] = factor * gradient[i];
+                }
+            } else {
+                // intersection of the segment from the Cauchy point to the Gauss-Newton point with the boundary
+                double a = 0.0;
+                double b = 0.0;
+                for (int i = 0; i < n; i++) {
+                    double d = newton[i] - cauchy[i];
+                    a += d * d;
+                    b += cauchy[i] * d;
+                }
+                double c = cauchyNorm * cauchyNorm - radius * radius;
+                double tau = (-b + Math.sqrt(b * b - a * c)) / a;
+                for (int i = 0; i < n; i++) {
+                    step[i] = cauchy[i] + tau * (newton[i] - cauchy[i]);
+                }
+            }
+            double stepNorm = Math.sqrt(GaussNewtonSolver.dot(step, step));
+
+            // reduction of the accuracy predicted by the linear model
+            solver.multJacobean(step, q);
+            double predicted = 2.0 * GaussNewtonSolver.dot(step, gradient) - GaussNewtonSolver.dot(q, q);
+
+            double[] result = workspace.trialVariables;
+            for (int i = 0; i < n; i++) {
+                result[i] = variables[i] - step[i];
+            }
+            double gain = (accuracy - solver.evaluateObjective(result)) / predicted;
+            if (gain < 0.25 || !(predicted > 0.0)) {
+                radius = 0.5 * stepNorm;
+            } else if (gain > 0.75 && stepNorm > 0.99 * radius) {
+                radius = 2.0 * radius;
+            }
+            if (predicted > 0.0 && gain > 0.0) {
+                System.arraycopy(result, 0, variables, 0, n);
+                return;
+            }
+        }
+        // no improvement possible, restore values
+        radius = 0.0;
+        solver.computeValuesOnly(variables);
+    }
+
+    @Override
+    public void restart() {
+        radius = 0.0;
+    }
+}
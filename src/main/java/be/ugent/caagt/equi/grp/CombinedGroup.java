@@ -109,6 +109,58 @@ public class CombinedGroup {
 
     private List<Integer> pointRepresentatives;
 
+    /**
+     * Number of elements of this group. The trivial group has order 0.
+     */
+    public int getOrder() {
+        return elements.length;
+    }
+
+    /**
+     * Image of the given point under the element with the given index.
+     */
+    public int image(int element, int point) {
+        return elements[element].perm.image(point);
+    }
+
+    /**
+     * Express every point in terms of the representative of its orbit. For every point p, stores the index
+     * of that representative (in the list of representatives) into orbit[p] and a 3x3 matrix T into transform[p],
+     * such that the coordinates of p are the coordinates of the representative multiplied by T, for every
+     * list of coordinates that is symmetric with respect to this group. For a representative, T is
+     * the projection onto the space fixed by its stabilizer. Not available for the trivial group.
+     *
+     * @return the number of orbits
+     */
+    public int computeOrbitTransforms(int[] orbit, double[][][] transform) {
+        int[] count = new int[orbit.length];
+        for (int k = 0; k < pointRepresentatives.size(); k++) {
+            int pt = pointRepresentatives.get(k);
+            for (ExtendedPerm el : elements) {
+                int pos = el.perm.image(pt);
+                double[][] mat = el.mat.getMatrix();
+                if (count[pos] == 0) {
+                    orbit[pos] = k;
+                    transform[pos] = new double[3][3];
+                }
+                count[pos]++;
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        transform[pos][i][j] += mat[i][j];
+                    }
+                }
+            }
+        }
+        for (int pos = 0; pos < orbit.length; pos++) {
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++) {
+                    transform[pos][i][j] /= count[pos];
+                }
+            }
+        }
+        return pointRepresentatives.size();
+    }
+
     /**
      * Compute the coordinates of the list of points in the orbit of the given point, even if the original
      * coordinate is not stabilized by the stabilizer of the given point. Assumes the list contains
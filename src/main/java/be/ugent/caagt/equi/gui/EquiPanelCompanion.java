@@ -98,6 +98,9 @@ public class EquiPanelCompanion {
                 //noinspection deprecation
                 longTaskThread.stop(); // :-( I see no other solution except forking the jvm...
             }
+            if (engine != null) {
+                engine.close();
+            }
         });
     }
 
@@ -157,8 +160,12 @@ public class EquiPanelCompanion {
 
         // start with the trivial group
         CombinedGroup grp = CombinedGroup.TRIVIAL_GROUP;
+        if (engine != null) {
+            engine.close();
+        }
         this.engine = new PlanarizationEngine(graph);
         engine.setGroup(grp);
+        engine.setParallelism(Runtime.getRuntime().availableProcessors());
         this.saveDialog = new Save3DDialog(stage);
 
         //
@@ -235,6 +242,12 @@ public class EquiPanelCompanion {
         runAsLongTask(() -> engine.timedStep(15000L));
     }
 
+    public void doPortfolio() {
+        int nrOfMembers = Math.max(3, Runtime.getRuntime().availableProcessors());
+        runAsLongTask(() -> engine.portfolio(nrOfMembers, PlanarizationEngine.DEFAULT_PORTFOLIO_MILLISECONDS,
+                PlanarizationEngine.DEFAULT_PORTFOLIO_TARGET));
+    }
+
     public void do5steps() {
         runAsLongTask(() -> engine.multipleSteps(5));
     }
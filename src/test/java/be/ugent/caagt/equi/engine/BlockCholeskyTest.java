@@ -0,0 +1,197 @@
+/* BlockCholeskyTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the sparse Cholesky factorization {@link BlockCholesky}, in both precisions, against the residual of the
+ * solution and against {@link DenseCholesky}.
+ */
+public class BlockCholeskyTest {
+
+    private static final int ORDER = 60;
+
+    /**
+     * Sparse symmetric positive definite block matrix of the given order. Block column k has blocks in rows k - 1,
+     * k - 5 and in a random earlier row, so that the factorization produces fill.
+     */
+    static BlockSymmetricMatrix randomSparseMatrix(int order, Random random) {
+        int[] colStart = new int[order + 1];
+        int[] rows = new int[4 * order];
+        int p = 0;
+        for (int k = 0; k < order; k++) {
+            colStart[k] = p;
+            SortedSet<Integer> column = new TreeSet<>();
+            column.add(k);
+            if (k >= 1) {
+                column.add(k - 1);
+                column.add(random.nextInt(k));
+            }
+            if (k >= 5) {
+                column.add(k - 5);
+            }
+            for (int row : column) {
+                rows[p] = row;
+                p++;
+            }
+        }
+        colStart[order] = p;
+        BlockSymmetricMatrix matrix = new BlockSymmetricMatrix(colStart, Arrays.copyOf(rows, p));
+        for (int k = 0; k < order; k++) {
+            for (p = colStart[k]; p < colStart[k + 1] - 1; p++) {
+                for (int i = 0; i < 9; i++) {
+                    matrix.values[9 * p + i] = random.nextDouble() - 0.5;
+                }
+            }
+            int d = 9 * (colStart[k + 1] - 1);
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < i; j++) {
+                    matrix.values[d + 3 * i + j] = random.nextDouble() - 0.5;
+                    matrix.values[d + 3 * j + i] = matrix.values[d + 3 * i + j];
+                }
+                matrix.values[d + 4 * i] = 12.0;
+            }
+        }
+        return matrix;
+    }
+
+    private static double[] randomVector(int length, Random random) {
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = random.nextDouble() - 0.5;
+        }
+        return result;
+    }
+
+    private static double norm(double[] vector) {
+        return Math.sqrt(GaussNewtonSolver.dot(vector, vector));
+    }
+
+    /**
+     * Relative residual |A x - b| / |b| of the solution computed by the given solver.
+     */
+    private static double relativeResidual(NormalEquationSolver solver, BlockSymmetricMatrix matrix, double[] rhs) {
+        double[] x = new double[rhs.length];
+        solver.analyze(matrix);
+        assertTrue(solver.factorize(matrix));
+        assertTrue(solver.solve(rhs.clone(), x));
+        double[] residual = new double[rhs.length];
+        matrix.multiply(x, residual);
+        for (int i = 0; i < rhs.length; i++) {
+            residual[i] -= rhs[i];
+        }
+        return norm(residual) / norm(rhs);
+    }
+
+    @Test
+    public void doublePrecisionSolves() {
+        Random random = new Random(1);
+        BlockSymmetricMatrix matrix = randomSparseMatrix(ORDER, random);
+        double residual = relativeResidual(new BlockCholesky(ORDER), matrix, randomVector(3 * ORDER, random));
+        assertTrue("residual " + residual, residual < 1.0E-14);
+    }
+
+    @Test
+    public void singlePrecisionSolvesApproximately() {
+        Random random = new Random(2);
+        BlockSymmetricMatrix matrix = randomSparseMatrix(ORDER, random);
+        BlockCholesky cholesky = new BlockCholesky(ORDER);
+        cholesky.setSinglePrecision(true);
+        double residual = relativeResidual(cholesky, matrix, randomVector(3 * ORDER, random));
+        assertTrue("residual " + residual, residual < 1.0E-5);
+        assertTrue("residual " + residual, residual > 1.0E-12);
+    }
+
+    @Test
+    public void switchingPrecisionRefactorizes() {
+        Random random = new Random(3);
+        BlockSymmetricMatrix matrix = randomSparseMatrix(ORDER, random);
+        double[] rhs = randomVector(3 * ORDER, random);
+        BlockCholesky cholesky = new BlockCholesky(ORDER);
+        cholesky.setSinglePrecision(true);
+        relativeResidual(cholesky, matrix, rhs);
+        cholesky.setSinglePrecision(false);
+        double residual = relativeResidual(cholesky, matrix, rhs);
+        assertTrue("residual " + residual, residual < 1.0E-14);
+    }
+
+    @Test
+    public void agreesWithDenseCholesky() {
+        Random random = new Random(4);
+        BlockSymmetricMatrix matrix = randomSparseMatrix(ORDER, random);
+        double[] rhs = randomVector(3 * ORDER, random);
+
+        BlockCholesky sparse = new BlockCholesky(ORDER);
+        sparse.analyze(matrix);
+        assertTrue(sparse.factorize(matrix));
+        double[] expected = new double[rhs.length];
+        sparse.solve(rhs.clone(), expected);
+
+        DenseCholesky dense = new DenseCholesky(3 * ORDER, null);
+        dense.analyze(matrix);
+        assertTrue(dense.factorize(matrix));
+        double[] actual = new double[rhs.length];
+        dense.solve(rhs.clone(), actual);
+
+        assertArrayEquals(expected, actual, 1.0E-13);
+    }
+
+    @Test
+    public void denseCholeskySolvesFullMatrix() {
+        Random random = new Random(5);
+        int n = 3 * ORDER;
+        BlockSymmetricMatrix matrix = DenseCholeskyBenchmark.randomMatrix(n, random);
+        double residual = relativeResidual(new DenseCholesky(n, null), matrix, randomVector(n, random));
+        assertTrue("residual " + residual, residual < 1.0E-14);
+    }
+
+    @Test
+    public void rejectsIndefiniteMatrix() {
+        Random random = new Random(6);
+        BlockSymmetricMatrix matrix = randomSparseMatrix(ORDER, random);
+        matrix.values[matrix.diagonal(3 * ORDER / 2)] = -1.0;
+        BlockCholesky sparse = new BlockCholesky(ORDER);
+        sparse.analyze(matrix);
+        assertFalse(sparse.factorize(matrix));
+        DenseCholesky dense = new DenseCholesky(3 * ORDER, null);
+        dense.analyze(matrix);
+        assertFalse(dense.factorize(matrix));
+    }
+}
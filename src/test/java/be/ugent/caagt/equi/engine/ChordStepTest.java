@@ -0,0 +1,109 @@
+/* ChordStepTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link GaussNewtonSolver#setMaxChordSteps}.
+ */
+public class ChordStepTest {
+
+    private static final int MAX_STEPS = 60;
+
+    private static GaussNewtonSolver solver(PlanarGraph graph, GaussNewtonSolver.DirectionMethod method,
+                                            GaussNewtonSolver.StepStrategy strategy, int maxChordSteps) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setDirectionMethod(method);
+        solver.setStepStrategy(strategy);
+        solver.setMaxChordSteps(maxChordSteps);
+        return solver;
+    }
+
+    /**
+     * Chord steps are only accepted when they reduce the accuracy, so near a solution the accuracy keeps
+     * decreasing.
+     */
+    @Test
+    public void chordStepsConverge() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY}) {
+            for (GaussNewtonSolver.StepStrategy strategy : new GaussNewtonSolver.StepStrategy[]{
+                    GaussNewtonSolver.StepStrategy.LINE_SEARCH, GaussNewtonSolver.StepStrategy.SPECULATIVE_LINE_SEARCH}) {
+                GaussNewtonSolver solver = solver(graph, method, strategy, 3);
+                double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+                double accuracy = solver.computeAccuracy(coordinates);
+                for (int i = 0; i < MAX_STEPS && accuracy >= 1.0E-25; i++) {
+                    solver.step(coordinates);
+                    double next = solver.computeAccuracy(coordinates);
+                    if (accuracy < 1.0E-4) {
+                        assertTrue(method + " " + strategy + " step " + i + ": " + accuracy + " -> " + next,
+                                next < accuracy);
+                    }
+                    accuracy = next;
+                }
+                assertTrue(method + " " + strategy + ": " + accuracy, accuracy < 1.0E-25);
+            }
+        }
+    }
+
+    /**
+     * The damped strategies and {@link GaussNewtonSolver.DirectionMethod#CGLS} never reuse the Jacobean.
+     */
+    @Test
+    public void chordStepsOnlyWithLineSearch() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.CGLS}) {
+            for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+                if (method != GaussNewtonSolver.DirectionMethod.CGLS
+                        && (strategy == GaussNewtonSolver.StepStrategy.LINE_SEARCH
+                        || strategy == GaussNewtonSolver.StepStrategy.SPECULATIVE_LINE_SEARCH)) {
+                    continue;
+                }
+                GaussNewtonSolver plain = solver(graph, method, strategy, 0);
+                GaussNewtonSolver chord = solver(graph, method, strategy, 3);
+                double[] expected = TestGraphs.randomCoordinates(graph, 1L);
+                double[] actual = expected.clone();
+                for (int i = 0; i < 20; i++) {
+                    plain.step(expected);
+                    chord.step(actual);
+                }
+                assertArrayEquals(method + " " + strategy, expected, actual, 0.0);
+            }
+        }
+    }
+}
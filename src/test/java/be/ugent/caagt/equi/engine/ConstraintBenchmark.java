@@ -0,0 +1,82 @@
+/* ConstraintBenchmark.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+
+/**
+ * Measures the time needed by {@link GaussNewtonSolver} to run over all of its constraints: once to evaluate the
+ * equations, and repeatedly for the products with the Jacobean (and its transpose) of a CGLS direction.
+ * <p>
+ * Usage: {@code ConstraintBenchmark [n]}, where the graph is the prism over an n-gon (default 3000), with
+ * 3n edges and 3n quads.
+ */
+public class ConstraintBenchmark {
+
+    private static final int WARM_UP = 20;
+
+    private static final int REPETITIONS = 50;
+
+    /**
+     * Number of CGLS iterations per direction, i.e., of products with the Jacobean and with its transpose.
+     */
+    private static final int INNER_ITERATIONS = 10;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        PlanarGraph graph = TestGraphs.prism(n);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setDirectionMethod(GaussNewtonSolver.DirectionMethod.CGLS);
+        solver.setMaxInnerIterations(INNER_ITERATIONS);
+
+        double sum = 0.0;
+        for (int i = 0; i < WARM_UP; i++) {
+            sum += solver.computeAccuracy(coordinates);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            sum += solver.computeAccuracy(coordinates);
+        }
+        double values = (System.nanoTime() - start) / 1.0E6 / REPETITIONS;
+
+        for (int i = 0; i < WARM_UP; i++) {
+            sum += solver.computeDirectionAt(coordinates)[0];
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            sum += solver.computeDirectionAt(coordinates)[0];
+        }
+        double direction = (System.nanoTime() - start) / 1.0E6 / REPETITIONS;
+
+        System.out.printf("n = %d, values: %.2f ms, CGLS direction: %.2f ms (%g)%n", n, values, direction, sum);
+    }
+}
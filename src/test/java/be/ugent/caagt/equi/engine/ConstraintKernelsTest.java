@@ -0,0 +1,144 @@
+/* ConstraintKernelsTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link GaussNewtonSolver#setStructOfArrays} does not change the results of the solver.
+ */
+public class ConstraintKernelsTest {
+
+    /**
+     * Large enough for several blocks of edges and quads, and with a partial last block.
+     */
+    private static final PlanarGraph LARGE = TestGraphs.prism(150);
+
+    private static GaussNewtonSolver solver(PlanarGraph graph, GaussNewtonSolver.DirectionMethod method,
+                                            GaussNewtonSolver.StepStrategy strategy, boolean structOfArrays) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setDirectionMethod(method);
+        solver.setStepStrategy(strategy);
+        solver.setStructOfArrays(structOfArrays);
+        return solver;
+    }
+
+    @Test
+    public void sameAccuracy() {
+        for (PlanarGraph graph : new PlanarGraph[]{TestGraphs.antiprism(7), LARGE}) {
+            double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+            double expected = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP).computeAccuracy(coordinates);
+            double actual = solver(graph, GaussNewtonSolver.DirectionMethod.CHOLESKY,
+                    GaussNewtonSolver.StepStrategy.LINE_SEARCH, true).computeAccuracy(coordinates);
+            assertEquals(expected, actual, 1.0E-12 * expected);
+        }
+    }
+
+    /**
+     * The equations are polynomials of degree at most 3, so a central difference with step h differs from the
+     * derivative by a multiple of h^2.
+     */
+    @Test
+    public void derivativesMatchDifferences() {
+        Random random = new Random(3L);
+        int order = LARGE.getOrder();
+        int[] edges = new int[2 * LARGE.getSize()];
+        for (int e = 0; e < LARGE.getSize(); e++) {
+            edges[2 * e] = 3 * LARGE.getEdge(e)[0];
+            edges[2 * e + 1] = 3 * LARGE.getEdge(e)[1];
+        }
+        int[] quads = new int[4 * 300];
+        for (int i = 0; i < quads.length; i++) {
+            quads[i] = 3 * random.nextInt(order);
+        }
+        ConstraintKernels kernels = new ConstraintKernels(order, edges, quads);
+        ConstraintKernels.Lanes lanes = new ConstraintKernels.Lanes();
+        int nrOfConstraints = LARGE.getSize() + quads.length / 4;
+
+        double[] coordinates = TestGraphs.randomCoordinates(LARGE, 4L);
+        double[] direction = TestGraphs.randomCoordinates(LARGE, 5L);
+        kernels.load(coordinates);
+        kernels.loadDirection(direction);
+        double[] derivatives = new double[nrOfConstraints];
+        kernels.derivatives(derivatives, 0, lanes);
+
+        double h = 1.0E-4;
+        double[] plus = new double[nrOfConstraints];
+        double[] minus = new double[nrOfConstraints];
+        double[] shifted = new double[coordinates.length];
+        for (int i = 0; i < shifted.length; i++) {
+            shifted[i] = coordinates[i] + h * direction[i];
+        }
+        kernels.load(shifted);
+        kernels.values(0, nrOfConstraints, plus, 0, lanes);
+        for (int i = 0; i < shifted.length; i++) {
+            shifted[i] = coordinates[i] - h * direction[i];
+        }
+        kernels.load(shifted);
+        kernels.values(0, nrOfConstraints, minus, 0, lanes);
+        for (int c = 0; c < nrOfConstraints; c++) {
+            assertEquals("constraint " + c, (plus[c] - minus[c]) / (2.0 * h), derivatives[c], 1.0E-6);
+        }
+    }
+
+    /**
+     * The kernels round differently, and CGLS stops at a tolerance, so the steps only agree approximately.
+     */
+    @Test
+    public void sameSteps() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.CGLS}) {
+            for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+                GaussNewtonSolver plain = solver(graph, method, strategy, false);
+                GaussNewtonSolver blocked = solver(graph, method, strategy, true);
+                double[] expected = TestGraphs.randomCoordinates(graph, 1L);
+                double[] actual = expected.clone();
+                for (int i = 0; i < 5; i++) {
+                    plain.step(expected);
+                    blocked.step(actual);
+                }
+                assertArrayEquals(method + " " + strategy, expected, actual, 1.0E-6);
+                for (int i = 0; i < 60 && blocked.computeAccuracy(actual) >= 1.0E-25; i++) {
+                    blocked.step(actual);
+                }
+                assertTrue(method + " " + strategy, blocked.computeAccuracy(actual) < 1.0E-25);
+            }
+        }
+    }
+}
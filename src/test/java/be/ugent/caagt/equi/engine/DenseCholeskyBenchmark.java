@@ -0,0 +1,112 @@
+/* DenseCholeskyBenchmark.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the time needed by {@link DenseCholesky} to factorize a dense symmetric positive definite matrix,
+ * sequentially and in parallel.
+ * <p>
+ * Usage: {@code DenseCholeskyBenchmark [size [threads]]}, where size is the number of rows (a multiple of 3,
+ * default 1200) and threads the parallelism to compare with (default: the number of processors).
+ */
+public class DenseCholeskyBenchmark {
+
+    private static final int WARM_UP = 5;
+
+    private static final int REPETITIONS = 10;
+
+    /**
+     * Dense matrix of the given size in block format, strictly diagonally dominant and hence positive definite.
+     */
+    static BlockSymmetricMatrix randomMatrix(int n, Random random) {
+        int order = n / 3;
+        int[] colStart = new int[order + 1];
+        int[] rows = new int[order * (order + 1) / 2];
+        int p = 0;
+        for (int k = 0; k < order; k++) {
+            colStart[k] = p;
+            for (int r = 0; r <= k; r++) {
+                rows[p] = r;
+                p++;
+            }
+        }
+        colStart[order] = p;
+        BlockSymmetricMatrix matrix = new BlockSymmetricMatrix(colStart, rows);
+        for (int k = 0; k < order; k++) {
+            for (p = colStart[k]; p < colStart[k + 1]; p++) {
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        if (rows[p] != k || i < j) {
+                            matrix.values[9 * p + 3 * i + j] = random.nextDouble() - 0.5;
+                        }
+                    }
+                }
+            }
+            // diagonal block: symmetric, with a dominant diagonal
+            int d = 9 * (colStart[k + 1] - 1);
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < i; j++) {
+                    matrix.values[d + 3 * i + j] = matrix.values[d + 3 * j + i];
+                }
+                matrix.values[d + 4 * i] = n;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Average time in milliseconds of a factorization of the given matrix.
+     */
+    private static double time(NormalEquationSolver solver, BlockSymmetricMatrix matrix) {
+        for (int i = 0; i < WARM_UP; i++) {
+            solver.factorize(matrix);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            solver.factorize(matrix);
+        }
+        return (System.nanoTime() - start) / 1.0E6 / REPETITIONS;
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        BlockSymmetricMatrix matrix = randomMatrix(n, new Random(1));
+        System.out.printf("n = %d, sequential: %.1f ms%n", n, time(new DenseCholesky(n, null), matrix));
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            System.out.printf("n = %d, %d threads: %.1f ms%n", n, threads, time(new DenseCholesky(n, pool), matrix));
+            pool.shutdown();
+        }
+    }
+}
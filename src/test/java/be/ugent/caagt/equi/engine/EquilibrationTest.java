@@ -0,0 +1,110 @@
+/* EquilibrationTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link GaussNewtonSolver#setEquilibration} and {@link GaussNewtonSolver#computeNormalizedAccuracy}.
+ */
+public class EquilibrationTest {
+
+    private static final int MAX_STEPS = 60;
+
+    private static double[] converge(PlanarGraph graph, GaussNewtonSolver.DirectionMethod method,
+                                     GaussNewtonSolver.StepStrategy strategy, boolean equilibrate) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setDirectionMethod(method);
+        solver.setStepStrategy(strategy);
+        solver.setEquilibration(equilibrate);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        for (int i = 0; i < MAX_STEPS && solver.computeAccuracy(coordinates) >= 1.0E-25; i++) {
+            solver.step(coordinates);
+        }
+        double accuracy = solver.computeAccuracy(coordinates);
+        assertTrue(method + " " + strategy + ": " + accuracy, accuracy < 1.0E-25);
+        return coordinates;
+    }
+
+    @Test
+    public void equilibratedStepsConverge() {
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY,
+                GaussNewtonSolver.DirectionMethod.CGLS}) {
+            for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+                converge(TestGraphs.antiprism(7), method, strategy, true);
+                converge(TestGraphs.prism(6), method, strategy, true);
+            }
+        }
+    }
+
+    /**
+     * Scaling a solution by s keeps its faces planar and changes every edge equation by s^2 - 1, while the norm
+     * of its gradient becomes sqrt(8) s.
+     */
+    @Test
+    public void normalizedAccuracyOfScaledSolution() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        double[] coordinates = converge(graph, GaussNewtonSolver.DirectionMethod.CHOLESKY,
+                GaussNewtonSolver.StepStrategy.LINE_SEARCH, false);
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        assertTrue(solver.computeNormalizedAccuracy(coordinates) < 1.0E-25);
+
+        double s = 1.0 + 1.0E-4;
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] *= s;
+        }
+        double edge = (s * s - 1.0) / (Math.sqrt(8.0) * s);
+        double expected = graph.getSize() * edge * edge;
+        assertEquals(expected, solver.computeNormalizedAccuracy(coordinates), 1.0E-6 * expected);
+        double plain = graph.getSize() * (s * s - 1.0) * (s * s - 1.0);
+        assertEquals(plain, solver.computeAccuracy(coordinates), 1.0E-6 * plain);
+    }
+
+    /**
+     * Normalized accuracy does not depend on the position of the polyhedron.
+     */
+    @Test
+    public void normalizedAccuracyIsTranslationInvariant() {
+        PlanarGraph graph = TestGraphs.prism(6);
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 2L);
+        double accuracy = solver.computeNormalizedAccuracy(coordinates);
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] += 10.0 * (i % 3 + 1);
+        }
+        assertEquals(accuracy, solver.computeNormalizedAccuracy(coordinates), 1.0E-10 * accuracy);
+    }
+}
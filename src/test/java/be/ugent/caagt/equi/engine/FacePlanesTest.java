@@ -0,0 +1,141 @@
+/* FacePlanesTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link GaussNewtonSolver.Planarity#FACE_PLANES} formulation of planarity.
+ */
+public class FacePlanesTest {
+
+    private static final int MAX_STEPS = 60;
+
+    /**
+     * Coordinates close to a solution: a solution of the determinant equations, with every coordinate moved
+     * by at most 0.05.
+     */
+    private static double[] nearSolution(PlanarGraph graph) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        for (int i = 0; i < MAX_STEPS && solver.computeAccuracy(coordinates) >= 1.0E-25; i++) {
+            solver.step(coordinates);
+        }
+        Random random = new Random(2L);
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] += 0.1 * random.nextDouble() - 0.05;
+        }
+        return coordinates;
+    }
+
+    private static void checkConvergence(PlanarGraph graph, CombinedGroup group,
+                                         GaussNewtonSolver.DirectionMethod method,
+                                         GaussNewtonSolver.StepStrategy strategy) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, group, GaussNewtonSolver.Planarity.FACE_PLANES);
+        solver.setDirectionMethod(method);
+        solver.setStepStrategy(strategy);
+        double[] coordinates = nearSolution(graph);
+        for (int i = 0; i < MAX_STEPS && solver.computeAccuracy(coordinates) >= 1.0E-25; i++) {
+            solver.step(coordinates);
+        }
+        String message = method + " " + strategy;
+        assertTrue(message, solver.computeAccuracy(coordinates) < 1.0E-25);
+
+        // the same embedding also solves the determinant equations
+        double accuracy = new GaussNewtonSolver(graph, group).computeAccuracy(coordinates);
+        assertTrue(message + ": " + accuracy, accuracy < 1.0E-24);
+    }
+
+    @Test
+    public void facePlanesConverge() {
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY,
+                GaussNewtonSolver.DirectionMethod.CGLS}) {
+            for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+                checkConvergence(TestGraphs.antiprism(7), CombinedGroup.TRIVIAL_GROUP, method, strategy);
+                checkConvergence(TestGraphs.antiprism(8), CombinedGroup.TRIVIAL_GROUP, method, strategy);
+            }
+        }
+    }
+
+    /**
+     * A solver reduced by a group falls back to the determinants.
+     */
+    @Test
+    public void reducedSolverUsesQuads() {
+        checkConvergence(TestGraphs.prism(6), TestGraphs.prismGroup(6, true),
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.StepStrategy.LINE_SEARCH);
+    }
+
+    /**
+     * Fit the normal of a single hexagon whose vertices have the given coordinates in the plane spanned by two
+     * orthonormal vectors, after moving vertex 1 by the given distance along the normal of that plane, and
+     * return the absolute value of the cosine of the angle between the fitted normal and that normal.
+     */
+    private static double fittedCosine(double[][] points, double offset) {
+        double[] e1 = {0.6, 0.0, 0.8};
+        double[] e2 = {0.0, 1.0, 0.0};
+        double[] normal = {-0.8, 0.0, 0.6};
+        double[] variables = new double[3 * points.length + 3];
+        for (int v = 0; v < points.length; v++) {
+            for (int i = 0; i < 3; i++) {
+                variables[3 * v + i] = 0.5 + points[v][0] * e1[i] + points[v][1] * e2[i];
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            variables[3 + i] += offset * normal[i];
+        }
+        FacePlanes planes = new FacePlanes(Collections.singletonList(new int[]{0, 1, 2, 3, 4, 5}), 3 * points.length);
+        planes.fitNormals(variables);
+        double cosine = 0.0;
+        for (int i = 0; i < 3; i++) {
+            cosine += variables[3 * points.length + i] * normal[i];
+        }
+        return Math.abs(cosine);
+    }
+
+    /**
+     * A self-intersecting hexagon whose signed area vanishes, so that Newell's method does not yield a normal.
+     */
+    @Test
+    public void fitsNormalOfSelfIntersectingFace() {
+        double[][] figureEight = {{-1, 1}, {-1, 0}, {-1, -1}, {1, 1}, {1, 0}, {1, -1}};
+        assertEquals(1.0, fittedCosine(figureEight, 0.0), 1.0E-12);
+        assertEquals(1.0, fittedCosine(figureEight, 1.0E-3), 1.0E-5);
+    }
+}
@@ -0,0 +1,196 @@
+/* GaussNewtonSolverTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link GaussNewtonSolver} evaluates the right equations, converges for every direction method and
+ * step strategy, and that its directions do not depend on how rigid motions are eliminated.
+ */
+public class GaussNewtonSolverTest {
+
+    private static final int MAX_STEPS = 60;
+
+    private static void checkConvergence(PlanarGraph graph, GaussNewtonSolver.DirectionMethod method,
+                                         GaussNewtonSolver.StepStrategy strategy) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setDirectionMethod(method);
+        solver.setStepStrategy(strategy);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        for (int i = 0; i < MAX_STEPS && solver.computeAccuracy(coordinates) >= 1.0E-25; i++) {
+            solver.step(coordinates);
+        }
+        double accuracy = solver.computeAccuracy(coordinates);
+        assertTrue(method + " " + strategy + ": " + accuracy, accuracy < 1.0E-25);
+    }
+
+    @Test
+    public void allMethodsConverge() {
+        for (GaussNewtonSolver.DirectionMethod method : GaussNewtonSolver.DirectionMethod.values()) {
+            for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+                checkConvergence(TestGraphs.antiprism(7), method, strategy);
+                checkConvergence(TestGraphs.prism(6), method, strategy);
+            }
+        }
+    }
+
+    /**
+     * Rigid motions are removed from every direction, so a step does not move the center of the polyhedron.
+     */
+    @Test
+    public void stepsDoNotTranslate() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.CGLS}) {
+            GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+            solver.setDirectionMethod(method);
+            double[] coordinates = TestGraphs.randomCoordinates(graph, 2L);
+            double[] center = center(coordinates);
+            for (int i = 0; i < 10; i++) {
+                solver.step(coordinates);
+                double[] next = center(coordinates);
+                for (int k = 0; k < 3; k++) {
+                    assertEquals(method + " step " + i, center[k], next[k], 1.0E-12);
+                }
+            }
+        }
+    }
+
+    private static double[] center(double[] coordinates) {
+        double[] result = new double[3];
+        for (int co = 0; co < coordinates.length; co++) {
+            result[co % 3] += coordinates[co];
+        }
+        for (int k = 0; k < 3; k++) {
+            result[k] /= coordinates.length / 3;
+        }
+        return result;
+    }
+
+    /**
+     * The vertices fixed to remove the rigid motions depend on the numbering of the vertices. Numbering them in
+     * reverse order must give the same direction.
+     */
+    @Test
+    public void directionDoesNotDependOnNumbering() {
+        int n = 7;
+        PlanarGraph graph = TestGraphs.antiprism(n);
+        int order = graph.getOrder();
+        int[][] neighbours = new int[order][];
+        for (int v = 0; v < order; v++) {
+            int[] original = graph.getNeighbours(v);
+            neighbours[order - 1 - v] = new int[original.length];
+            for (int i = 0; i < original.length; i++) {
+                neighbours[order - 1 - v][i] = order - 1 - original[i];
+            }
+        }
+        PlanarGraph reversed = new PlanarGraph(neighbours);
+
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 3L);
+        double[] reversedCoordinates = new double[coordinates.length];
+        for (int v = 0; v < order; v++) {
+            System.arraycopy(coordinates, 3 * v, reversedCoordinates, 3 * (order - 1 - v), 3);
+        }
+        for (GaussNewtonSolver.DirectionMethod method : new GaussNewtonSolver.DirectionMethod[]{
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY}) {
+            GaussNewtonSolver solver = new GaussNewtonSolver(graph);
+            solver.setDirectionMethod(method);
+            double[] direction = solver.computeDirectionAt(coordinates).clone();
+            GaussNewtonSolver reversedSolver = new GaussNewtonSolver(reversed);
+            reversedSolver.setDirectionMethod(method);
+            double[] reversedDirection = reversedSolver.computeDirectionAt(reversedCoordinates);
+            double scale = Math.sqrt(GaussNewtonSolver.dot(direction, direction));
+            for (int v = 0; v < order; v++) {
+                for (int k = 0; k < 3; k++) {
+                    assertEquals(method + " vertex " + v, direction[3 * v + k],
+                            reversedDirection[3 * (order - 1 - v) + k], 1.0E-9 * scale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accuracy computed directly from the graph: the squared edge equations, and the squared determinants of
+     * the quads of consecutive vertices of every face, all of them for pentagons and larger faces.
+     */
+    private static double referenceAccuracy(PlanarGraph graph, double[] coordinates) {
+        double[] total = new double[1];
+        graph.sweepEdges(edge -> {
+            double value = -1.0;
+            for (int i = 0; i < 3; i++) {
+                double d = coordinates[3 * edge[0] + i] - coordinates[3 * edge[1] + i];
+                value += d * d;
+            }
+            total[0] += value * value;
+        });
+        graph.sweepFaces(face -> {
+            int l = face.length;
+            int nrOfQuads = l == 4 ? 1 : l < 4 ? 0 : l;
+            for (int q = 0; q < nrOfQuads; q++) {
+                double[][] m = new double[3][3];
+                int p = 3 * face[(q + 3) % l];
+                for (int r = 0; r < 3; r++) {
+                    for (int i = 0; i < 3; i++) {
+                        m[r][i] = coordinates[3 * face[(q + r) % l] + i] - coordinates[p + i];
+                    }
+                }
+                double value = m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1])
+                        - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0])
+                        + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]);
+                total[0] += value * value;
+            }
+        });
+        return total[0];
+    }
+
+    @Test
+    public void accuracyMatchesReference() {
+        for (PlanarGraph graph : new PlanarGraph[]{TestGraphs.antiprism(7), TestGraphs.prism(6),
+                TestGraphs.prism(150)}) {
+            double[] coordinates = TestGraphs.randomCoordinates(graph, 4L);
+            double expected = referenceAccuracy(graph, coordinates);
+            for (int parallelism = 1; parallelism <= 2; parallelism++) {
+                GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+                solver.setParallelism(parallelism);
+                try {
+                    assertEquals(expected, solver.computeAccuracy(coordinates), 1.0E-12 * expected);
+                } finally {
+                    solver.setParallelism(1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/* LineSearchTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the line search strategies of {@link GaussNewtonSolver}.
+ */
+public class LineSearchTest {
+
+    private static final int MAX_STEPS = 60;
+
+    /**
+     * Take steps from random coordinates until the accuracy drops below 1e-25, and check that no step
+     * increases the accuracy.
+     */
+    private static double[] converge(PlanarGraph graph, GaussNewtonSolver.StepStrategy strategy, int parallelism) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setStepStrategy(strategy);
+        solver.setParallelism(parallelism);
+        try {
+            double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+            double accuracy = solver.computeAccuracy(coordinates);
+            for (int i = 0; i < MAX_STEPS && accuracy >= 1.0E-25; i++) {
+                solver.step(coordinates);
+                double next = solver.computeAccuracy(coordinates);
+                assertTrue(strategy + " step " + i + ": " + next + " > " + accuracy, next <= accuracy);
+                accuracy = next;
+            }
+            assertTrue(strategy + ": " + accuracy, accuracy < 1.0E-25);
+            return coordinates;
+        } finally {
+            solver.setParallelism(1);
+        }
+    }
+
+    @Test
+    public void speculativeSearchConverges() {
+        for (int parallelism = 1; parallelism <= 3; parallelism++) {
+            converge(TestGraphs.antiprism(7), GaussNewtonSolver.StepStrategy.SPECULATIVE_LINE_SEARCH, parallelism);
+            converge(TestGraphs.prism(6), GaussNewtonSolver.StepStrategy.SPECULATIVE_LINE_SEARCH, parallelism);
+        }
+    }
+
+    /**
+     * The step lengths of a round are evaluated independently, so the result does not depend on the parallelism.
+     */
+    @Test
+    public void speculativeSearchIsDeterministic() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        double[] sequential = converge(graph, GaussNewtonSolver.StepStrategy.SPECULATIVE_LINE_SEARCH, 1);
+        double[] parallel = converge(graph, GaussNewtonSolver.StepStrategy.SPECULATIVE_LINE_SEARCH, 4);
+        assertArrayEquals(sequential, parallel, 0.0);
+    }
+
+    /**
+     * Near a solution the accuracy (a sum of squares) drops quadratically, and once a step has reduced it by
+     * {@link GaussNewtonSolver#FULL_STEP_RATIO}, {@link GaussNewtonSolver.StepStrategy#LINE_SEARCH} takes the
+     * full Gauss-Newton step.
+     */
+    @Test
+    public void fullStepsNearSolution() {
+        PlanarGraph graph = TestGraphs.antiprism(7); // the solutions of a prism are not isolated
+        for (long seed = 1L; seed <= 3L; seed++) {
+            GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+            GaussNewtonSolver reference = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+            double[] coordinates = TestGraphs.randomCoordinates(graph, seed);
+            double previous = Double.MAX_VALUE;
+            double accuracy = solver.computeAccuracy(coordinates);
+            for (int i = 0; i < MAX_STEPS && accuracy >= 1.0E-20; i++) {
+                double[] expected = coordinates.clone();
+                double[] direction = reference.computeDirectionAt(coordinates);
+                for (int k = 0; k < expected.length; k++) {
+                    expected[k] -= direction[k];
+                }
+                solver.step(coordinates);
+                double next = solver.computeAccuracy(coordinates);
+                if (accuracy < 1.0E-4 && accuracy < GaussNewtonSolver.FULL_STEP_RATIO * previous) {
+                    assertArrayEquals("seed " + seed + " step " + i, expected, coordinates, 1.0E-14);
+                }
+                if (accuracy < 1.0E-4 && accuracy > 1.0E-12) {
+                    assertTrue("seed " + seed + " step " + i + ": " + accuracy + " -> " + next,
+                            next < 1.0E3 * accuracy * accuracy);
+                }
+                previous = accuracy;
+                accuracy = next;
+            }
+            assertTrue("seed " + seed + ": " + accuracy, accuracy < 1.0E-20);
+        }
+    }
+}
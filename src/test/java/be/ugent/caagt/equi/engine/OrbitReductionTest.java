@@ -0,0 +1,104 @@
+/* OrbitReductionTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link GaussNewtonSolver} that is reduced by a symmetry group produces symmetric solutions.
+ */
+public class OrbitReductionTest {
+
+    private static final int N = 6;
+
+    /**
+     * Largest change of a coordinate when the given coordinates are made symmetric.
+     */
+    private static double asymmetry(CombinedGroup group, double[] coordinates) {
+        double[] symmetric = coordinates.clone();
+        group.symmetrize(symmetric);
+        double max = 0.0;
+        for (int i = 0; i < coordinates.length; i++) {
+            max = Math.max(max, Math.abs(symmetric[i] - coordinates[i]));
+        }
+        return max;
+    }
+
+    private static void checkReducedSolver(CombinedGroup group, GaussNewtonSolver.DirectionMethod method) {
+        PlanarGraph graph = TestGraphs.prism(N);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        group.symmetrize(coordinates);
+        GaussNewtonSolver reduced = new GaussNewtonSolver(graph, group);
+        reduced.setDirectionMethod(method);
+        for (int i = 0; i < 40; i++) {
+            reduced.step(coordinates);
+            assertTrue(asymmetry(group, coordinates) < 1.0E-12);
+        }
+        double accuracy = new GaussNewtonSolver(graph).computeAccuracy(coordinates);
+        String message = group.getCaption() + " " + method + ": " + accuracy;
+        assertTrue(message, accuracy < 1.0E-20);
+    }
+
+    @Test
+    public void cyclicGroup() {
+        CombinedGroup group = TestGraphs.prismGroup(N, false);
+        checkReducedSolver(group, GaussNewtonSolver.DirectionMethod.CHOLESKY);
+        checkReducedSolver(group, GaussNewtonSolver.DirectionMethod.CGLS);
+    }
+
+    @Test
+    public void fullGroup() {
+        CombinedGroup group = TestGraphs.prismGroup(N, true);
+        checkReducedSolver(group, GaussNewtonSolver.DirectionMethod.CHOLESKY);
+        checkReducedSolver(group, GaussNewtonSolver.DirectionMethod.CGLS);
+    }
+
+    @Test
+    public void engineWithOrbitReduction() {
+        CombinedGroup group = TestGraphs.prismGroup(N, true);
+        PlanarizationEngine.RG.setSeed(12345L);
+        PlanarizationEngine engine = new PlanarizationEngine(TestGraphs.prism(N));
+        engine.setGroup(group);
+        engine.setOrbitReduction(true);
+        engine.symmetrize();
+        engine.multipleSteps(30);
+        assertTrue(engine.computeAccuracy() < 1.0E-20);
+        double[][] vertices = engine.getCoordinates();
+        double[] coordinates = new double[3 * vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            System.arraycopy(vertices[i], 0, coordinates, 3 * i, 3);
+        }
+        assertTrue(asymmetry(group, coordinates) < 1.0E-12);
+    }
+}
@@ -0,0 +1,120 @@
+/* PlanarizationEngineTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the life cycle and the high level operations of {@link PlanarizationEngine}.
+ */
+public class PlanarizationEngineTest {
+
+    private static PlanarizationEngine engine(PlanarGraph graph) {
+        PlanarizationEngine.RG.setSeed(12345L);
+        PlanarizationEngine engine = new PlanarizationEngine(graph);
+        engine.setGroup(CombinedGroup.TRIVIAL_GROUP);
+        return engine;
+    }
+
+    /**
+     * Worker threads of fork/join pools other than the common pool.
+     */
+    private static Set<Thread> poolThreads() {
+        Set<Thread> result = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("ForkJoinPool-")) {
+                result.add(thread);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void closeStopsThreads() throws InterruptedException {
+        Set<Thread> before = poolThreads();
+        PlanarizationEngine engine = engine(TestGraphs.antiprism(7));
+        engine.setParallelism(2);
+        engine.multipleSteps(5);
+        Set<Thread> threads = poolThreads();
+        threads.removeAll(before);
+        assertFalse(threads.isEmpty());
+
+        engine.close();
+        for (Thread thread : threads) {
+            thread.join(10000L);
+            assertFalse(thread.getName(), thread.isAlive());
+        }
+
+        // still usable, on the calling thread
+        engine.multipleSteps(30);
+        assertTrue(engine.computeAccuracy() < 1.0E-20);
+    }
+
+    /**
+     * All members of a portfolio stop as soon as one of them reaches the target. With this seed, the third member
+     * gets stuck far from a solution and would otherwise keep stepping until its time is up.
+     */
+    @Test
+    public void portfolioStopsWhenSolved() {
+        PlanarizationEngine.RG.setSeed(3L);
+        PlanarizationEngine engine = new PlanarizationEngine(TestGraphs.antiprism(9));
+        engine.setGroup(CombinedGroup.TRIVIAL_GROUP);
+        long start = System.currentTimeMillis();
+        engine.portfolio(4, 60000L, PlanarizationEngine.DEFAULT_PORTFOLIO_TARGET);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("elapsed " + elapsed, elapsed < 20000L);
+        assertTrue(engine.computeAccuracy() <= PlanarizationEngine.DEFAULT_PORTFOLIO_TARGET);
+    }
+
+    /**
+     * A portfolio keeps the current coordinates when no member improves on them.
+     */
+    @Test
+    public void portfolioKeepsBetterCoordinates() {
+        PlanarizationEngine engine = engine(TestGraphs.antiprism(5));
+        engine.multipleSteps(30);
+        double[][] before = engine.getCoordinates();
+        double accuracy = engine.computeAccuracy();
+        engine.portfolio(2, 0L, 0.0);
+        assertTrue(engine.computeAccuracy() <= accuracy);
+        if (engine.computeAccuracy() == accuracy) {
+            assertTrue(Arrays.deepEquals(before, engine.getCoordinates()));
+        }
+    }
+}
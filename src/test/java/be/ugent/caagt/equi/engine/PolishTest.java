@@ -0,0 +1,116 @@
+/* PolishTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link GaussNewtonSolver#polish} after steps with the different direction methods and step strategies.
+ */
+public class PolishTest {
+
+    private static final int MAX_STEPS = 100;
+
+    /**
+     * Solver for the given graph, after steps from random coordinates until the accuracy drops below the
+     * given bound. The coordinates are updated in place.
+     */
+    private static GaussNewtonSolver converge(PlanarGraph graph, double[] coordinates, double bound,
+                                              GaussNewtonSolver.DirectionMethod method,
+                                              GaussNewtonSolver.StepStrategy strategy) {
+        GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP);
+        solver.setDirectionMethod(method);
+        solver.setStepStrategy(strategy);
+        for (int i = 0; i < MAX_STEPS && solver.computeAccuracy(coordinates) >= bound; i++) {
+            solver.step(coordinates);
+        }
+        assertTrue(solver.computeAccuracy(coordinates) < bound);
+        return solver;
+    }
+
+    /**
+     * Largest deviation of an edge length from 1.
+     */
+    private static double maxEdgeError(PlanarGraph graph, double[] coordinates) {
+        double max = 0.0;
+        for (int e = 0; e < graph.getSize(); e++) {
+            int[] edge = graph.getEdge(e);
+            double total = 0.0;
+            for (int i = 0; i < 3; i++) {
+                double d = coordinates[3 * edge[0] + i] - coordinates[3 * edge[1] + i];
+                total += d * d;
+            }
+            max = Math.max(max, Math.abs(Math.sqrt(total) - 1.0));
+        }
+        return max;
+    }
+
+    private static void checkPolish(GaussNewtonSolver.DirectionMethod method) {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+            double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+            GaussNewtonSolver solver = converge(graph, coordinates, 1.0E-26, method, strategy);
+            double accuracy = solver.computeAccuracy(coordinates);
+            solver.polish(coordinates);
+            String message = method + " " + strategy + ": " + accuracy + " -> " + solver.getAccuracy();
+            assertTrue(message, solver.getAccuracy() <= accuracy);
+            assertTrue(message, solver.getAccuracy() < 1.0E-29);
+            assertTrue(message, maxEdgeError(graph, coordinates) < 5.0E-16);
+        }
+    }
+
+    @Test
+    public void polishAfterCholesky() {
+        checkPolish(GaussNewtonSolver.DirectionMethod.CHOLESKY);
+    }
+
+    @Test
+    public void polishAfterCgls() {
+        checkPolish(GaussNewtonSolver.DirectionMethod.CGLS);
+    }
+
+    /**
+     * The last factorization is damped, far from a solution. Polishing must not reuse it: undamped Newton
+     * corrections converge quadratically from here.
+     */
+    @Test
+    public void polishRefactorizesAfterDampedStep() {
+        PlanarGraph graph = TestGraphs.antiprism(7);
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        GaussNewtonSolver solver = converge(graph, coordinates, 1.0E-4,
+                GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.StepStrategy.LEVENBERG_MARQUARDT);
+        solver.polish(coordinates);
+        assertTrue("accuracy " + solver.getAccuracy(), solver.getAccuracy() < 1.0E-28);
+    }
+}
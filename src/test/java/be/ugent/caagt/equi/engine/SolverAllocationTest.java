@@ -0,0 +1,127 @@
+/* SolverAllocationTest.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that steps of {@link GaussNewtonSolver} do not allocate memory once the solver has been set up,
+ * for every direction method that promises so, every step strategy and both formulations of planarity.
+ */
+public class SolverAllocationTest {
+
+    /**
+     * Number of steps before measuring, enough for the work space to be set up and for the JIT
+     * compiler to have compiled (and escape analyzed) the hot methods.
+     */
+    private static final int WARM_UP = 300;
+
+    private static final int STEPS = 50;
+
+    /**
+     * Number of measurements, of which the smallest counts. Allocations by the JIT compiler or by class
+     * loading may still occur during a single measurement.
+     */
+    private static final int ROUNDS = 3;
+
+    /**
+     * Smallest number of bytes allocated by the current thread during a series of steps, perturbing the
+     * coordinates in between so that the solver does not stop at a solution.
+     */
+    private static long allocatedBytes(GaussNewtonSolver solver, PlanarGraph graph) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double[] coordinates = TestGraphs.randomCoordinates(graph, 1L);
+        double[] perturbation = TestGraphs.randomCoordinates(graph, 2L);
+        long result = Long.MAX_VALUE;
+        for (int round = -1; round < ROUNDS; round++) {
+            long before = mx.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < (round < 0 ? WARM_UP : STEPS); i++) {
+                solver.step(coordinates);
+                if (i % 10 == 0) {
+                    for (int k = 0; k < coordinates.length; k++) {
+                        coordinates[k] += 1.0E-3 * perturbation[k];
+                    }
+                }
+            }
+            long after = mx.getThreadAllocatedBytes(thread);
+            if (round >= 0) {
+                result = Math.min(result, after - before);
+            }
+        }
+        return result;
+    }
+
+    private static void checkNoAllocation(GaussNewtonSolver.DirectionMethod method, GaussNewtonSolver.Planarity planarity) {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        Assume.assumeTrue(((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemoryEnabled());
+        PlanarGraph graph = TestGraphs.prism(8);
+        for (GaussNewtonSolver.StepStrategy strategy : GaussNewtonSolver.StepStrategy.values()) {
+            GaussNewtonSolver solver = new GaussNewtonSolver(graph, CombinedGroup.TRIVIAL_GROUP, planarity);
+            solver.setDirectionMethod(method);
+            solver.setStepStrategy(strategy);
+            assertEquals(method + " " + strategy + " " + planarity, 0L, allocatedBytes(solver, graph));
+        }
+    }
+
+    @Test
+    public void choleskyStepsDoNotAllocate() {
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.Planarity.QUADS);
+    }
+
+    @Test
+    public void denseCholeskyStepsDoNotAllocate() {
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY, GaussNewtonSolver.Planarity.QUADS);
+    }
+
+    @Test
+    public void cglsStepsDoNotAllocate() {
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.CGLS, GaussNewtonSolver.Planarity.QUADS);
+    }
+
+    @Test
+    public void automaticStepsDoNotAllocate() {
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.AUTOMATIC, GaussNewtonSolver.Planarity.QUADS);
+    }
+
+    @Test
+    public void facePlaneStepsDoNotAllocate() {
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.CHOLESKY, GaussNewtonSolver.Planarity.FACE_PLANES);
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.DENSE_CHOLESKY, GaussNewtonSolver.Planarity.FACE_PLANES);
+        checkNoAllocation(GaussNewtonSolver.DirectionMethod.CGLS, GaussNewtonSolver.Planarity.FACE_PLANES);
+    }
+}
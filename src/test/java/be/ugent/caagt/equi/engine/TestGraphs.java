@@ -0,0 +1,112 @@
+/* TestGraphs.java
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Copyright Ⓒ 2015 Universiteit Gent
+ * 
+ * This file is part of the Equi application
+ * 
+ * Corresponding author (see also file AUTHORS)
+ * 
+ * Kris Coolsaet
+ * Department of Applied Mathematics, Computer Science and Statistics
+ * Ghent University 
+ * Krijgslaan 281-S9
+ * B-9000 GENT Belgium
+ * 
+ * The Equi application is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Equi Application is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the Equi Application (file LICENSE in the distribution).  If not,
+ * see http://www.gnu.org/licenses/.
+ */
+
+package be.ugent.caagt.equi.engine;
+
+import be.ugent.caagt.equi.PlanarGraph;
+import be.ugent.caagt.equi.grp.CombinedGroup;
+import be.ugent.caagt.equi.grp.ExtendedPerm;
+import be.ugent.caagt.equi.grp.PointGroupElement;
+import be.ugent.caagt.perm.Perm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Small graphs, symmetry groups and starting coordinates used by the tests.
+ */
+final class TestGraphs {
+
+    private TestGraphs() {
+    }
+
+    /**
+     * Prism over an n-gon: vertices 0..n-1 form the top face, n..2n-1 the bottom face.
+     */
+    static PlanarGraph prism(int n) {
+        int[][] neighbours = new int[2 * n][];
+        for (int i = 0; i < n; i++) {
+            neighbours[i] = new int[]{(i + 1) % n, (i + n - 1) % n, n + i};
+            neighbours[n + i] = new int[]{n + (i + n - 1) % n, n + (i + 1) % n, i};
+        }
+        return new PlanarGraph(neighbours);
+    }
+
+    /**
+     * Antiprism over an n-gon: vertices 0..n-1 form the top face, n..2n-1 the bottom face.
+     */
+    static PlanarGraph antiprism(int n) {
+        int[][] neighbours = new int[2 * n][];
+        for (int i = 0; i < n; i++) {
+            neighbours[i] = new int[]{(i + 1) % n, (i + n - 1) % n, n + (i + n - 1) % n, n + i};
+            neighbours[n + i] = new int[]{n + (i + n - 1) % n, n + (i + 1) % n, (i + 1) % n, i};
+        }
+        return new PlanarGraph(neighbours);
+    }
+
+    /**
+     * Symmetry group of the {@link #prism} over an n-gon: the rotations around its axis (Cn) or, when full,
+     * all of its symmetries (Dnh).
+     */
+    static CombinedGroup prismGroup(int n, boolean full) {
+        int[] rotation = new int[2 * n];
+        int[] mirror = new int[2 * n];
+        int[] flip = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            rotation[i] = (i + 1) % n;
+            rotation[n + i] = n + (i + 1) % n;
+            mirror[i] = (n - i) % n;
+            mirror[n + i] = n + (n - i) % n;
+            flip[i] = n + i;
+            flip[n + i] = i;
+        }
+        List<ExtendedPerm> generators = new ArrayList<>();
+        generators.add(new ExtendedPerm(Perm.create(rotation), PointGroupElement.rotation(n)));
+        if (full) {
+            generators.add(new ExtendedPerm(Perm.create(mirror), PointGroupElement.REFLECT_V));
+            generators.add(new ExtendedPerm(Perm.create(flip), PointGroupElement.REFLECT_H));
+            return new CombinedGroup("D" + n + "h", 4 * n, 2 * n, generators);
+        } else {
+            return new CombinedGroup("C" + n, n, 2 * n, generators);
+        }
+    }
+
+    /**
+     * Random coordinates in [-1.5, 1.5] for all vertices of the given graph.
+     */
+    static double[] randomCoordinates(PlanarGraph graph, long seed) {
+        Random random = new Random(seed);
+        double[] coordinates = new double[3 * graph.getOrder()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = 3.0 * random.nextDouble() - 1.5;
+        }
+        return coordinates;
+    }
+}